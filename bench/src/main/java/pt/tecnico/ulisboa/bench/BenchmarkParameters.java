@@ -0,0 +1,29 @@
+package pt.tecnico.ulisboa.bench;
+
+import java.util.concurrent.ForkJoinPool;
+
+import pt.tecnico.ulisboa.Config;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.ProofScheme;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.VDFEngine;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.VDFParameterRegistry;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.VDFParameters;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.VDFProver;
+
+// The network's VDF group, so the numbers match what the nodes run. Benchmarks are started
+// from the repository root (see `make bench`), hence the depchain/ prefix.
+final class BenchmarkParameters {
+    private BenchmarkParameters() {
+    }
+
+    static VDFParameters vdf(long T) {
+        return VDFParameterRegistry.load("depchain/" + Config.BLOCK_DIRPATH + "/" + Config.VDF_PARAMS_PATH)
+                .withTimeParameter(T);
+    }
+
+    // A node's prover without snapshots, which would only add disk writes to the measurement
+    static VDFProver prover(ProofScheme scheme, VDFParameters params) {
+        return scheme == ProofScheme.PIETRZAK
+                ? new VDFEngine(params, ForkJoinPool.commonPool())
+                : scheme.newProver(params);
+    }
+}
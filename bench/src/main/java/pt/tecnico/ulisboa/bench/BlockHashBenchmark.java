@@ -0,0 +1,49 @@
+package pt.tecnico.ulisboa.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
+import pt.tecnico.ulisboa.blockchain.blocks.PoWHeader;
+import pt.tecnico.ulisboa.blockchain.blocks.PoWTarget;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.PoSWConsensus;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.ProofScheme;
+
+// Block hashing: one nonce from the header midstate (the miners' inner loop), the PoW hash
+// from scratch (what validators recompute) and the full hash over the VDF proof
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockHashBenchmark {
+    private HybridBlock block;
+    private PoWHeader header;
+    private long nonce;
+
+    @Setup
+    public void setup() {
+        block = new HybridBlock("0000000000000000", 1, new ArrayList<>(), PoWTarget.fromLeadingZeros(8));
+        block.setPOWHash(block.computeBlockHash(true));
+        new PoSWConsensus(BenchmarkParameters.vdf(1L << 16), ProofScheme.PIETRZAK).finalizeBlock(block);
+        header = block.newPOWHeader();
+    }
+
+    @Benchmark
+    public byte[] headerHash() {
+        return header.hash(nonce++);
+    }
+
+    @Benchmark
+    public String computePoWHash() {
+        return block.computeBlockHash(true);
+    }
+
+    @Benchmark
+    public String computeBlockHash() {
+        return block.computeBlockHash();
+    }
+}
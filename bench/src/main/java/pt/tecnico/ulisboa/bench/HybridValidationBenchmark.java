@@ -0,0 +1,47 @@
+package pt.tecnico.ulisboa.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
+import pt.tecnico.ulisboa.blockchain.blocks.PoWTarget;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.hybrid.HybridConsensus;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.ProofScheme;
+
+// Full validation of a received block (PoW, then the VDF proof), on the first block after
+// genesis so T is the configured one rather than retargeted, and results compare across machines
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HybridValidationBenchmark {
+    @Param({"65536", "1048576"})
+    public long T;
+
+    @Param({"PIETRZAK", "WESOLOWSKI"})
+    public ProofScheme scheme;
+
+    private HybridConsensus consensus;
+    private HybridBlock block;
+
+    @Setup
+    public void setup() {
+        int difficulty = PoWTarget.fromLeadingZeros(4);
+        consensus = new HybridConsensus(difficulty, BenchmarkParameters.vdf(T), scheme);
+        HybridBlock genesis = new HybridBlock("0000000000000000", 0, new ArrayList<>(), difficulty);
+        genesis.setHash(genesis.computeBlockHash());
+        block = consensus.mineBlock(genesis, new ArrayList<>());
+        if (!consensus.validateBlock(block)) {
+            throw new IllegalStateException("Mined block does not validate");
+        }
+    }
+
+    @Benchmark
+    public boolean validateBlock() {
+        return consensus.validateBlock(block);
+    }
+}
@@ -0,0 +1,82 @@
+package pt.tecnico.ulisboa.bench;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.GroupArithmetic;
+
+// Jacobi symbol on random residues of an odd modulus: the shared binary implementation
+// against the BigInteger remainder/divide loop it replaced in VDFEngine and ProofVerifier
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JacobiBenchmark {
+    private static final int SAMPLES = 64;
+
+    @Param({"2048", "3072"})
+    public int bits;
+
+    private BigInteger n;
+    private BigInteger[] xs;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        n = new BigInteger(bits, random).setBit(bits - 1).setBit(0);
+        xs = new BigInteger[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            xs[i] = new BigInteger(bits, random).mod(n);
+        }
+    }
+
+    private BigInteger nextX() {
+        next = (next + 1) % SAMPLES;
+        return xs[next];
+    }
+
+    @Benchmark
+    public int binary() {
+        return GroupArithmetic.jacobi(nextX(), n);
+    }
+
+    @Benchmark
+    public int legacy() {
+        return legacyJacobi(nextX(), n);
+    }
+
+    // The previous implementation, kept here only as the baseline
+    private static int legacyJacobi(BigInteger a, BigInteger n) {
+        a = a.remainder(n);
+        int result = 1;
+
+        while (!a.equals(BigInteger.ZERO)) {
+            while (a.remainder(BigInteger.valueOf(2)).equals(BigInteger.ZERO)) {
+                a = a.divide(BigInteger.valueOf(2));
+                BigInteger nMod8 = n.remainder(BigInteger.valueOf(8));
+                if (nMod8.equals(BigInteger.valueOf(3)) || nMod8.equals(BigInteger.valueOf(5))) {
+                    result = -result;
+                }
+            }
+
+            BigInteger temp = a;
+            a = n;
+            n = temp;
+
+            if (a.remainder(BigInteger.valueOf(4)).equals(BigInteger.valueOf(3)) &&
+                n.remainder(BigInteger.valueOf(4)).equals(BigInteger.valueOf(3))) {
+                result = -result;
+            }
+
+            a = a.remainder(n);
+        }
+
+        return n.equals(BigInteger.ONE) ? result : 0;
+    }
+}
@@ -0,0 +1,52 @@
+package pt.tecnico.ulisboa.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import pt.tecnico.ulisboa.Config;
+import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
+import pt.tecnico.ulisboa.blockchain.blocks.PoWTarget;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.metrics.ConsensusMetrics;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.pow.PoWConsensus;
+
+// Mining a block at a fixed difficulty, on Config.POW_MINER_THREADS threads. Besides the time
+// per block, the `hashes` counter reports the hash rate (attempts/s, from ConsensusMetrics).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PoWBenchmark {
+    @Param({"4", "5"}) // hex digits, ~65k and ~1M attempts per block
+    public int leadingZeros;
+
+    private PoWConsensus pow;
+    private int difficulty;
+    private HybridBlock tip;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Hashes {
+        public long hashes;
+    }
+
+    @Setup
+    public void setup() {
+        difficulty = PoWTarget.fromLeadingZeros(leadingZeros);
+        pow = new PoWConsensus(Config.POW_MINER_THREADS, difficulty);
+        tip = new HybridBlock("0000000000000000", 0, new ArrayList<>(), difficulty);
+        tip.setHash(tip.computeBlockHash());
+    }
+
+    // Each block is mined on the previous one, so no search repeats; the difficulty stays fixed
+    @Benchmark
+    public HybridBlock mineBlock(Hashes counter) {
+        long before = ConsensusMetrics.POW_HASHES.get();
+        tip = pow.mineBlock(tip, new ArrayList<>(), difficulty, () -> false);
+        counter.hashes += ConsensusMetrics.POW_HASHES.get() - before;
+        return tip;
+    }
+}
@@ -0,0 +1,39 @@
+package pt.tecnico.ulisboa.bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.ProofScheme;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.SequentialProof;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.VDFProver;
+
+// One full proof per call (squaring chain plus proof), the cost of finalizing a block.
+// A call takes seconds at the larger T, so every iteration times a single call.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class VDFProverBenchmark {
+    @Param({"65536", "262144", "1048576"})
+    public long T;
+
+    @Param({"PIETRZAK", "WESOLOWSKI"})
+    public ProofScheme scheme;
+
+    private VDFProver prover;
+    private long input;
+
+    @Setup
+    public void setup() {
+        prover = BenchmarkParameters.prover(scheme, BenchmarkParameters.vdf(T));
+    }
+
+    @Benchmark
+    public SequentialProof computeVDF() {
+        return prover.computeVDF(ByteBuffer.allocate(Long.BYTES).putLong(input++).array());
+    }
+}
@@ -0,0 +1,46 @@
+package pt.tecnico.ulisboa.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.ProofScheme;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.SequentialProof;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.VDFParameters;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.VDFVerifier;
+
+// Verifying one valid proof, what every node pays per received block. ProofVerifier for
+// PIETRZAK, WesolowskiVerifier for WESOLOWSKI.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VDFVerifierBenchmark {
+    @Param({"65536", "1048576"})
+    public long T;
+
+    @Param({"PIETRZAK", "WESOLOWSKI"})
+    public ProofScheme scheme;
+
+    private final byte[] input = "vdf-verifier-benchmark".getBytes(StandardCharsets.UTF_8);
+    private VDFVerifier verifier;
+    private SequentialProof proof;
+
+    @Setup
+    public void setup() {
+        VDFParameters params = BenchmarkParameters.vdf(T);
+        verifier = scheme.newVerifier(params);
+        proof = BenchmarkParameters.prover(scheme, params).computeVDF(input);
+        if (!verifier.verifyVDFProof(input, proof)) {
+            throw new IllegalStateException("Proof does not verify");
+        }
+    }
+
+    @Benchmark
+    public boolean verifyVDFProof() {
+        return verifier.verifyVDFProof(input, proof);
+    }
+}
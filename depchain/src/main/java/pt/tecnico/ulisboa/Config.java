@@ -22,7 +22,10 @@ public class Config {
     public final static int CLIENT_TIMEOUT_MS = 2000;
     public final static int DEFAULT_TIMEOUT = 10000;
     public final static int MAX_FRAGMENT_SIZE = 1024;
-    public final static int TX_PER_BLOCK = 1;
+    // A block is proposed once any of these is reached, see BlockBuilder
+    public final static int TX_PER_BLOCK = 64; // at most
+    public final static int BLOCK_MAX_BYTES = 256 * 1024; // signed transactions, at most
+    public final static long BLOCK_MAX_LINGER = 200; // ms the oldest pending transaction waits, at most
 
     public final static int DEFAULT_CLIENT_PORT = 10010;
     public final static int DEFAULT_SERVER_CLIENT_SOCKETS_PORT = 9090;
@@ -30,6 +33,32 @@ public class Config {
 
     public final static String GENESIS_BLOCK_PATH = "genesis_block.json";
     public final static String BLOCK_DIRPATH = "blocks";
+    public final static String VDF_PARAMS_PATH = "vdf_params.json";
+    public final static String VDF_SNAPSHOT_DIRPATH = "vdf_snapshots";
+    public final static long VDF_SNAPSHOT_INTERVAL = 1L << 18; // squarings between snapshots
+    public final static long VDF_SNAPSHOT_MAX_AGE = 30 * 60 * 1000; // ms, older snapshots are not resumed but deleted
+    // One core is left to the VDF finalizer thread
+    public final static int POW_MINER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    public final static long VDF_CANCEL_CHECK_INTERVAL = 1L << 12; // squarings between cancellation checks
+    public final static long POW_TARGET_BLOCK_TIME = 5000; // ms
+    public final static long VDF_TARGET_DELAY = 3000; // ms of sequential squaring per block
+    public final static long VDF_MIN_TIME_PARAMETER = 1L << 16; // bounds on a block's T that validators accept
+    public final static long VDF_MAX_TIME_PARAMETER = 1L << 30;
+    public final static int VDF_RETARGET_WINDOW = 15; // blocks whose VDF rates set the next T
+    public final static long VDF_CALIBRATION_SQUARINGS = 1L << 16; // timed by the local squaring benchmark
+    public final static long VDF_CALIBRATION_INTERVAL = 10 * 60 * 1000; // ms between local benchmarks
+    public final static long VDF_MAX_SPEEDUP = 8; // blocks claiming to square faster than this times the local rate are rejected
+    public final static int POW_RETARGET_WINDOW = 45; // blocks
+    public final static int MEDIAN_TIME_SPAN = 11; // a block's timestamp must exceed the median of this many ancestors
+    public final static long MAX_BLOCK_TIME_DRIFT = 15_000; // ms a block's timestamp may be ahead of the local clock
+    public final static int METRICS_PORT = 9464; // local Prometheus endpoint, plus the node id on servers; <= 0 disables it
+    public final static int FINALITY_DEPTH = 6; // blocks below the head before a block is final
+    public final static int MAX_FORKS_PER_HEIGHT = 8;
+    public final static int MAX_ORPHAN_BLOCKS = 256; // received blocks waiting for their parent, at most
+    public final static boolean HYBRID_CONSENSUS = false; // PoW + PoSW block production instead of BFT rounds
+    public final static int HYBRID_PIPELINE_DEPTH = 1; // mined blocks waiting for their VDF while the next is mined, 0 mines sequentially
+    public final static int TX_VERIFIER_THREADS = Runtime.getRuntime().availableProcessors(); // transaction signature checks
+    public final static int VERIFIED_SIGNATURE_CACHE_SIZE = 10_000; // valid transaction signatures remembered
     public static final int ADMIN_ID = -1;
     public static final BigInteger DEPCOIN_PER_IST = BigInteger.valueOf(23000);
     public static final HashMap<Integer, String> CLIENT_ID_2_ADDR = new HashMap<Integer, String>() {
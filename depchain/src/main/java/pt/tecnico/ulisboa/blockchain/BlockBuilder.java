@@ -0,0 +1,134 @@
+package pt.tecnico.ulisboa.blockchain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import pt.tecnico.ulisboa.Config;
+import pt.tecnico.ulisboa.protocol.ClientReq;
+
+// Decides when pending transactions make a block: as soon as one is full (maxTransactions or
+// maxBytes reached, or the next one would not fit), or the oldest one has waited maxLinger ms,
+// whichever comes first. Under load blocks fill up; when idle a transaction waits at most maxLinger.
+// A transaction larger than maxBytes still gets a block of its own.
+public class BlockBuilder {
+    private final int maxTransactions;
+    private final int maxBytes;
+    private final long maxLinger;
+    // When each pending transaction arrived, see received and forget
+    private final Map<ClientReq, Long> arrivals = new ConcurrentHashMap<>();
+
+    public BlockBuilder(int maxTransactions, int maxBytes, long maxLinger) {
+        if (maxTransactions < 1 || maxBytes < 1 || maxLinger < 0) {
+            throw new IllegalArgumentException("Block limits must be positive");
+        }
+        this.maxTransactions = maxTransactions;
+        this.maxBytes = maxBytes;
+        this.maxLinger = maxLinger;
+    }
+
+    public BlockBuilder() {
+        this(Config.TX_PER_BLOCK, Config.BLOCK_MAX_BYTES, Config.BLOCK_MAX_LINGER);
+    }
+
+    // What a transaction adds to a block: its canonical encoding and signature
+    public static int sizeOf(ClientReq tx) {
+        return tx.getEncoding().length + (tx.getSignature() != null ? tx.getSignature().length() : 0);
+    }
+
+    public void received(ClientReq tx) {
+        arrivals.putIfAbsent(tx, System.currentTimeMillis());
+    }
+
+    // Once a transaction is decided or dropped
+    public void forget(Collection<ClientReq> txs) {
+        arrivals.keySet().removeAll(txs);
+    }
+
+    // For transactions that stay pending until decided. `pending` is in arrival order; the
+    // result is the next block's transactions, empty while no limit is reached. The caller
+    // holds whatever lock guards `pending`.
+    public List<ClientReq> select(List<ClientReq> pending, long now) {
+        List<ClientReq> block = fill(pending);
+        boolean full = block.size() == maxTransactions || pending.size() > block.size()
+                || bytesOf(block) >= maxBytes;
+        return full || lingerRemaining(pending, now) == 0 ? block : List.of();
+    }
+
+    // Milliseconds until the oldest of `pending` has lingered enough, Long.MAX_VALUE if none is
+    private long lingerRemaining(List<ClientReq> pending, long now) {
+        if (pending.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        long since = arrivals.getOrDefault(pending.get(0), now);
+        return Math.max(0, since + maxLinger - now);
+    }
+
+    // How long a caller waiting for select to return a block should sleep at most
+    public long timeUntilReady(List<ClientReq> pending, long now) {
+        return select(pending, now).isEmpty() ? lingerRemaining(pending, now) : 0;
+    }
+
+    private static int bytesOf(List<ClientReq> block) {
+        int bytes = 0;
+        for (ClientReq tx : block) {
+            bytes += sizeOf(tx);
+        }
+        return bytes;
+    }
+
+    private List<ClientReq> fill(List<ClientReq> pending) {
+        List<ClientReq> block = new ArrayList<>(Math.min(pending.size(), maxTransactions));
+        int bytes = 0;
+        for (ClientReq tx : pending) {
+            int size = sizeOf(tx);
+            if (block.size() == maxTransactions || (!block.isEmpty() && bytes + size > maxBytes)) {
+                break;
+            }
+            block.add(tx);
+            bytes += size;
+        }
+        return block;
+    }
+
+    // For transactions consumed from a queue: waits for the first one, then takes more until a
+    // limit is reached. Linger counts from when the first one was taken (or arrived, if
+    // `received` saw it). A transaction that does not fit is put back at the head, and so is
+    // everything taken so far if the wait is interrupted.
+    public List<ClientReq> take(BlockingDeque<ClientReq> queue) throws InterruptedException {
+        List<ClientReq> block = new ArrayList<>();
+        ClientReq first = queue.take();
+        block.add(first);
+        int bytes = sizeOf(first);
+        long deadline = arrivals.getOrDefault(first, System.currentTimeMillis()) + maxLinger;
+
+        try {
+            while (block.size() < maxTransactions) {
+                long wait = deadline - System.currentTimeMillis();
+                ClientReq next = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : queue.poll();
+                if (next == null) {
+                    break;
+                }
+                int size = sizeOf(next);
+                if (bytes + size > maxBytes) {
+                    queue.addFirst(next);
+                    break;
+                }
+                block.add(next);
+                bytes += size;
+            }
+        } catch (InterruptedException e) {
+            // Back in their original order, ahead of anything that arrived meanwhile
+            for (int i = block.size() - 1; i >= 0; i--) {
+                queue.addFirst(block.get(i));
+            }
+            throw e;
+        }
+        forget(block);
+        return block;
+    }
+}
@@ -0,0 +1,242 @@
+package pt.tecnico.ulisboa.blockchain;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
+import pt.tecnico.ulisboa.blockchain.blocks.PoWTarget;
+
+// Competing HybridBlocks indexed by link hash (see HybridBlock.getLinkHash) and height.
+// The head is the block with the most cumulative work, kept up to date on every add, so
+// getHead() is O(1) and a reorg is just a different head.
+// Blocks more than `finalityDepth` below the head are final: the tree is re-rooted at the
+// head's ancestor at that depth and everything not descending from it is dropped. Together
+// with at most `maxForksPerHeight` blocks per height this bounds memory under fork storms:
+// a block arriving at a full height replaces the sibling with the least work, with its
+// descendants, unless it has even less work itself.
+public class BlockTree {
+    private static final class Node {
+        final HybridBlock block;
+        Node parent; // null for the root, so pruned ancestors can be collected
+        final int height;
+        final BigInteger work; // cumulative, from the root
+
+        Node(HybridBlock block, Node parent, BigInteger work) {
+            this.block = block;
+            this.parent = parent;
+            this.height = block.getHeight();
+            this.work = work;
+        }
+    }
+
+    private final int finalityDepth;
+    private final int maxForksPerHeight;
+    private final Map<String, Node> byHash = new HashMap<>();
+    private final Map<Integer, List<Node>> byHeight = new HashMap<>();
+    private Node root;
+    private Node head;
+    // Blocks that became final and were not taken yet, oldest first
+    private final List<HybridBlock> finalized = new ArrayList<>();
+
+    public BlockTree(HybridBlock root, int finalityDepth, int maxForksPerHeight) {
+        if (finalityDepth < 1 || maxForksPerHeight < 1) {
+            throw new IllegalArgumentException("Finality depth and forks per height must be positive");
+        }
+        this.finalityDepth = finalityDepth;
+        this.maxForksPerHeight = maxForksPerHeight;
+        this.root = new Node(root, null, BigInteger.ZERO);
+        this.head = this.root;
+        index(this.root);
+    }
+
+    // Work of a single block: expected PoW hashes for its target. The VDF adds none, as its
+    // T is set by the chain and says nothing about the effort behind a branch.
+    public static BigInteger workOf(HybridBlock block) {
+        BigInteger target = PoWTarget.fromCompact(block.getDifficulty());
+        return PoWTarget.MAX.divide(target.add(BigInteger.ONE));
+    }
+
+    // False if the block is already known, its parent is not (or was pruned), its height
+    // does not follow its parent's, or its height is full and it has no more cumulative work
+    // than any sibling that could make room
+    public synchronized boolean add(HybridBlock block) {
+        Node parent = block.getPrevHash() != null ? byHash.get(block.getPrevHash()) : null;
+        if (parent == null || byHash.containsKey(block.getLinkHash())
+                || block.getHeight() != parent.height + 1) {
+            return false;
+        }
+        Node node = new Node(block, parent, parent.work.add(workOf(block)));
+        List<Node> level = byHeight.get(block.getHeight());
+        if (level != null && level.size() >= maxForksPerHeight) {
+            Node weakest = weakestEvictable(level);
+            if (weakest == null || node.work.compareTo(weakest.work) <= 0) {
+                return false;
+            }
+            evict(weakest);
+        }
+
+        index(node);
+        // Ties keep the block seen first
+        if (node.work.compareTo(head.work) > 0) {
+            head = node;
+            if (head.height - root.height > finalityDepth) {
+                prune(ancestor(head, head.height - finalityDepth));
+            }
+        }
+        return true;
+    }
+
+    // Sibling with the least cumulative work that is neither the head nor one of its ancestors
+    private Node weakestEvictable(List<Node> level) {
+        Node onHeadBranch = head.height >= level.get(0).height ? ancestor(head, level.get(0).height) : null;
+        Node weakest = null;
+        for (Node node : level) {
+            if (node != onHeadBranch && (weakest == null || node.work.compareTo(weakest.work) < 0)) {
+                weakest = node;
+            }
+        }
+        return weakest;
+    }
+
+    // Drops `node` and everything descending from it
+    private void evict(Node node) {
+        byHash.remove(node.block.getLinkHash());
+        byHeight.get(node.height).remove(node);
+        dropOrphans(node.height + 1);
+    }
+
+    private void index(Node node) {
+        byHash.put(node.block.getLinkHash(), node);
+        byHeight.computeIfAbsent(node.height, h -> new ArrayList<>(1)).add(node);
+    }
+
+    // Re-roots the tree at `newRoot`, dropping every block that does not descend from it
+    private void prune(Node newRoot) {
+        int first = finalized.size();
+        for (Node node = newRoot; node != root; node = node.parent) {
+            finalized.add(first, node.block);
+        }
+        for (int h = root.height; h < newRoot.height; h++) {
+            drop(byHeight.remove(h));
+        }
+        List<Node> level = byHeight.get(newRoot.height);
+        level.removeIf(node -> {
+            if (node != newRoot) {
+                byHash.remove(node.block.getLinkHash());
+                return true;
+            }
+            return false;
+        });
+        newRoot.parent = null;
+        root = newRoot;
+        dropOrphans(newRoot.height + 1);
+    }
+
+    // From `height` up, only blocks whose parent survived stay, level by level
+    private void dropOrphans(int height) {
+        for (int h = height; byHeight.containsKey(h); h++) {
+            Iterator<Node> it = byHeight.get(h).iterator();
+            while (it.hasNext()) {
+                Node node = it.next();
+                if (byHash.get(node.parent.block.getLinkHash()) != node.parent) {
+                    byHash.remove(node.block.getLinkHash());
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void drop(List<Node> level) {
+        if (level != null) {
+            for (Node node : level) {
+                byHash.remove(node.block.getLinkHash());
+            }
+        }
+    }
+
+    private static Node ancestor(Node node, int height) {
+        while (node.height > height) {
+            node = node.parent;
+        }
+        return node;
+    }
+
+    public synchronized HybridBlock getHead() {
+        return head.block;
+    }
+
+    // Blocks that became final since the last call, oldest first; the root given to the
+    // constructor is not among them
+    public synchronized List<HybridBlock> takeFinalized() {
+        List<HybridBlock> blocks = new ArrayList<>(finalized);
+        finalized.clear();
+        return blocks;
+    }
+
+    // Newest final block; nothing below it is kept
+    public synchronized HybridBlock getRoot() {
+        return root.block;
+    }
+
+    public synchronized HybridBlock get(String linkHash) {
+        Node node = byHash.get(linkHash);
+        return node != null ? node.block : null;
+    }
+
+    public synchronized boolean contains(String linkHash) {
+        return byHash.containsKey(linkHash);
+    }
+
+    public synchronized List<HybridBlock> getBlocksAt(int height) {
+        List<Node> level = byHeight.get(height);
+        if (level == null) {
+            return Collections.emptyList();
+        }
+        List<HybridBlock> blocks = new ArrayList<>(level.size());
+        for (Node node : level) {
+            blocks.add(node.block);
+        }
+        return blocks;
+    }
+
+    public synchronized BigInteger getWork(String linkHash) {
+        Node node = byHash.get(linkHash);
+        return node != null ? node.work : null;
+    }
+
+    // Last block shared by the branches of a and b; a reorg from a to b undoes a's branch down
+    // to it and applies b's. Costs the reorg depth, not the chain length.
+    public synchronized HybridBlock commonAncestor(HybridBlock a, HybridBlock b) {
+        Node x = byHash.get(a.getLinkHash());
+        Node y = byHash.get(b.getLinkHash());
+        if (x == null || y == null) {
+            return null;
+        }
+        x = ancestor(x, Math.min(x.height, y.height));
+        y = ancestor(y, x.height);
+        while (x != y) {
+            x = x.parent;
+            y = y.parent;
+        }
+        return x.block;
+    }
+
+    // Root to head
+    public synchronized List<HybridBlock> getCanonicalChain() {
+        List<HybridBlock> chain = new ArrayList<>(head.height - root.height + 1);
+        for (Node node = head; node != null; node = node.parent) {
+            chain.add(node.block);
+        }
+        Collections.reverse(chain);
+        return chain;
+    }
+
+    public synchronized int size() {
+        return byHash.size();
+    }
+}
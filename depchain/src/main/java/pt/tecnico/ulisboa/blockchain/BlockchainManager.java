@@ -166,7 +166,6 @@ public class BlockchainManager {
             if (blockchain.size() == 0) {
                 Logger.ERROR("Blockchain is empty, genesis block was not added");
             } else {
-                blockchain.add(block);
                 Block lastBlock = blockchain.get(blockchain.size() - 1);
                 block.setHeight(lastBlock.getHeight() + 1);
             }
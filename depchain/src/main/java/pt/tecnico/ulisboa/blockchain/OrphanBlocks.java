@@ -0,0 +1,61 @@
+package pt.tecnico.ulisboa.blockchain;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import pt.tecnico.ulisboa.blockchain.blocks.Block;
+
+// Received blocks whose parent is not known yet, by the hash of that parent, until it shows
+// up. Blocks from other nodes may arrive out of order, or before a fork they build on.
+// Bounded: once `capacity` blocks wait, the ones waiting for the parent asked for longest
+// ago are dropped, as that parent is the least likely to come (or was pruned).
+public class OrphanBlocks {
+    private final int capacity;
+    // Insertion ordered, oldest parent first
+    private final Map<String, List<Block>> byParent = new LinkedHashMap<>();
+    private int size = 0;
+
+    public OrphanBlocks(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    // False if the same block is already waiting
+    public synchronized boolean add(Block block) {
+        List<Block> children = byParent.computeIfAbsent(block.getPrevHash(), h -> new ArrayList<>(1));
+        for (Block child : children) {
+            if (child.getHash().equals(block.getHash())) {
+                return false;
+            }
+        }
+        children.add(block);
+        size++;
+
+        Iterator<List<Block>> oldest = byParent.values().iterator();
+        while (size > capacity) {
+            List<Block> dropped = oldest.next();
+            size -= dropped.size();
+            oldest.remove();
+        }
+        return true;
+    }
+
+    // Removes and returns the blocks waiting for `parentHash`, in arrival order
+    public synchronized List<Block> takeChildren(String parentHash) {
+        List<Block> children = byParent.remove(parentHash);
+        if (children == null) {
+            return List.of();
+        }
+        size -= children.size();
+        return children;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,87 @@
+package pt.tecnico.ulisboa.blockchain;
+
+import java.nio.ByteBuffer;
+import java.security.PublicKey;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import pt.tecnico.ulisboa.Config;
+import pt.tecnico.ulisboa.protocol.ClientReq;
+
+// Client transaction signature checks (SHA256withRSA, 4096-bit keys) on a worker pool.
+// A block's signatures are checked concurrently and the first failure settles the result,
+// without waiting for the rest. Valid (transaction, signature, key) triples are remembered in
+// a bounded cache shared by every path that checks client signatures (ServerMessageHandler on
+// receipt, Block.isValid during consensus), so a transaction costs one RSA verification per node.
+public class TransactionVerifier {
+    private static final TransactionVerifier DEFAULT =
+            new TransactionVerifier(Config.TX_VERIFIER_THREADS, Config.VERIFIED_SIGNATURE_CACHE_SIZE);
+
+    // The leaf hash covers everything but the signature, so the signature is part of the key
+    private record Verified(ByteBuffer txHash, String signature, PublicKey key) {
+    }
+
+    private final ExecutorService pool;
+    // Only valid signatures go in: invalid ones are for anyone to make up and would flush it
+    private final Cache<Verified, Boolean> verified;
+
+    public TransactionVerifier(int threads, int cacheSize) {
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "tx-verifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .build();
+    }
+
+    public static TransactionVerifier getDefault() {
+        return DEFAULT;
+    }
+
+    public boolean verify(ClientReq tx, PublicKey key) {
+        if (tx.getSignature() == null) {
+            return false;
+        }
+        Verified entry = new Verified(ByteBuffer.wrap(tx.getLeafHash()), tx.getSignature(), key);
+        if (verified.getIfPresent(entry) != null) {
+            return true;
+        }
+        if (!tx.verifySignature(key)) {
+            return false;
+        }
+        verified.put(entry, Boolean.TRUE);
+        return true;
+    }
+
+    // Index of a transaction whose signature does not verify with keys.get(i), -1 if all do.
+    // With several bad signatures, any one of them may be reported.
+    public int findInvalidSignature(List<ClientReq> txs, List<PublicKey> keys) {
+        if (txs.size() < 2) {
+            return txs.isEmpty() || verify(txs.get(0), keys.get(0)) ? -1 : 0;
+        }
+
+        AtomicInteger invalid = new AtomicInteger(-1);
+        CompletableFuture<Void> firstFailure = new CompletableFuture<>();
+        CompletableFuture<?>[] checks = new CompletableFuture<?>[txs.size()];
+        for (int i = 0; i < txs.size(); i++) {
+            int index = i;
+            checks[i] = CompletableFuture.runAsync(() -> {
+                // Checks still queued after a failure are skipped
+                if (invalid.get() < 0 && !verify(txs.get(index), keys.get(index))
+                        && invalid.compareAndSet(-1, index)) {
+                    firstFailure.complete(null);
+                }
+            }, pool);
+        }
+        CompletableFuture.anyOf(CompletableFuture.allOf(checks), firstFailure).join();
+        return invalid.get();
+    }
+}
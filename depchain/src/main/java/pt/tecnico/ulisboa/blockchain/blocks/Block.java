@@ -5,8 +5,10 @@ import java.util.Map;
 import java.io.Serializable;
 import java.security.PublicKey;
 import java.util.ArrayList;
+import java.util.HexFormat;
 
 import pt.tecnico.ulisboa.Config;
+import pt.tecnico.ulisboa.blockchain.TransactionVerifier;
 import pt.tecnico.ulisboa.protocol.ClientReq;
 import pt.tecnico.ulisboa.utils.CryptoUtils;
 import pt.tecnico.ulisboa.utils.types.Consensable;
@@ -22,6 +24,8 @@ public class Block implements Consensable, Serializable {
     protected String blockHash;
     protected List<ClientReq> transactions;
     protected long timestamp;
+    // Built on first use, then updated on every append
+    private transient MerkleTree transactionTree;
 
     // constructor to load a already existing block
     public Block(String prevHash, Integer height, String blockHash, List<ClientReq> transactions, long timestamp) {
@@ -42,8 +46,9 @@ public class Block implements Consensable, Serializable {
         this.height = 0;
         this.prevHash = null;
         this.transactions = new ArrayList<>();
-        this.blockHash = computeBlockHash();
+        // Before the hash, which may cover it (see HybridBlock)
         this.timestamp = System.currentTimeMillis();
+        this.blockHash = computeBlockHash();
     }
 
     // constructor for genesis block and for server to create an empty block.
@@ -56,8 +61,8 @@ public class Block implements Consensable, Serializable {
         this.height = height;
         this.prevHash = prevHash;
         this.transactions = new ArrayList<>(txs);
-        this.blockHash = computeBlockHash();
         this.timestamp = timestamp;
+        this.blockHash = computeBlockHash();
     }
 
     public String computeBlockHash() {
@@ -67,12 +72,26 @@ public class Block implements Consensable, Serializable {
         return CryptoUtils.hashSHA256(blockData.toString().getBytes());
     }
 
+    // Merkle root of the transactions, see MerkleTree
     public String getTransactionsHash() {
-        StringBuilder txHash = new StringBuilder();
-        for (ClientReq tx : transactions) {
-            txHash.append(tx.toString());
+        return HexFormat.of().formatHex(getTransactionTree().getRoot());
+    }
+
+    private MerkleTree getTransactionTree() {
+        // Also rebuilt if the list or a transaction in it was changed other than through
+        // appendTransaction, e.g. an element replaced or a field set
+        MerkleTree tree = transactionTree;
+        if (tree == null || !tree.covers(transactions)) {
+            tree = new MerkleTree(transactions);
+            transactionTree = tree;
         }
-        return CryptoUtils.hashSHA256(txHash.toString().getBytes());
+        return tree;
+    }
+
+    // Lets a client holding only the block hash inputs (e.g. the PoW header) check that the
+    // index-th transaction is in this block, see MerkleTree.Proof.verify
+    public MerkleTree.Proof getInclusionProof(int index) {
+        return getTransactionTree().getProof(index);
     }
 
     public void appendTransaction(ClientReq transaction) {
@@ -80,6 +99,9 @@ public class Block implements Consensable, Serializable {
             throw new IllegalStateException("Block is full");
         }
         transactions.add(transaction);
+        if (transactionTree != null) {
+            transactionTree.append(transaction);
+        }
     }
 
     public boolean isFull() {
@@ -92,21 +114,26 @@ public class Block implements Consensable, Serializable {
             return false;
         }
 
-        // Check if each transaction is valid
+        // Check if each transaction is valid, the signatures all at once at the end
+        List<PublicKey> keys = new ArrayList<>(transactions.size());
         for (ClientReq tx : this.getTransactions()) {
             PublicKey puKey = publicKeys.get(tx.getSenderId());
             if (!tx.isValid()) {
                 Logger.LOG("Invalid transaction: " + tx);
             } else if (puKey == null) {
                 Logger.LOG("Public key not found for transaction: " + tx);
-            } else if (!tx.verifySignature(puKey)) {
-                Logger.LOG("Incorrect transaction signature: " + tx);
             } else {
+                keys.add(puKey);
                 continue;
             }
             return false;
         }
 
+        int invalid = TransactionVerifier.getDefault().findInvalidSignature(transactions, keys);
+        if (invalid >= 0) {
+            Logger.LOG("Incorrect transaction signature: " + transactions.get(invalid));
+            return false;
+        }
         return true;
     }
 
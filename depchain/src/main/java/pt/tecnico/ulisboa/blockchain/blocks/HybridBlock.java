@@ -1,20 +1,23 @@
 package pt.tecnico.ulisboa.blockchain.blocks;
 
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.HexFormat;
 import java.util.List;
 
 import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.SequentialProof;
 import pt.tecnico.ulisboa.protocol.ClientReq;
-import pt.tecnico.ulisboa.utils.CryptoUtils;
 
 public class HybridBlock extends Block {
     // PoW fields
     private long nonce = 0;
-    private Integer difficulty = 0;
+    private Integer difficulty = 0; // compact 256-bit target, see PoWTarget
     private String POWHash = null;
     
     // PoSW fields
     private SequentialProof vdfProof = null;
     private long timeParameter = 0;
+    private long vdfDuration = 0; // ms the prover took, the chain retargets T from it
 
     private boolean finalized = false;
     
@@ -26,6 +29,15 @@ public class HybridBlock extends Block {
     public HybridBlock() {
         super();
     }
+
+    private HybridBlock(long timestamp) {
+        super(null, 0, List.of(), timestamp);
+    }
+
+    // The same on every node, unlike new HybridBlock(), so their chains share a root
+    public static HybridBlock genesis() {
+        return new HybridBlock(0);
+    }
     
     @Override
     public String computeBlockHash() {
@@ -33,19 +45,25 @@ public class HybridBlock extends Block {
     }
 
     public String computeBlockHash(boolean onlyPOW) {
-        StringBuilder blockData = new StringBuilder();
-        blockData.append(super.computeBlockHash());
-        blockData.append(nonce);
-        blockData.append(difficulty);
-        
-        if (!onlyPOW && vdfProof != null) {
-            blockData.append(timeParameter);
-            blockData.append(vdfProof.toString());
+        PoWHeader header = newPOWHeader();
+        if (onlyPOW || vdfProof == null) {
+            return HexFormat.of().formatHex(header.hash(nonce));
         }
-        
-        return CryptoUtils.hashSHA256(blockData.toString().getBytes());
+
+        MessageDigest digest = PoWHeader.sha256();
+        digest.update(header.encode(nonce));
+        digest.update(ByteBuffer.allocate(2 * Long.BYTES).putLong(timeParameter).putLong(vdfDuration).array());
+        digest.update(vdfProof.encode());
+        return HexFormat.of().formatHex(digest.digest());
     }
-    
+
+    // Binary header hashed for PoW; everything but the nonce is fixed, so miners build one per
+    // thread and hash each nonce from its midstate
+    public PoWHeader newPOWHeader() {
+        // difficulty is still unset while the Block constructor computes the initial hash
+        return new PoWHeader(getPrevHash(), getTransactionsHash(), difficulty != null ? difficulty : 0, getTimestamp());
+    }
+
     // PoW-specific methods
     public void incrementNonce() {
         nonce++;
@@ -59,6 +77,14 @@ public class HybridBlock extends Block {
         this.POWHash = POWHash;
     }
 
+    // What a child block stores as prevHash: the PoW hash, known as soon as the block is mined
+    // and unchanged when the VDF proof is attached, so the child's PoW does not have to wait
+    // for this block's VDF (see MiningPipeline).
+    // Blocks that were never mined (genesis) fall back to their block hash.
+    public String getLinkHash() {
+        return POWHash != null ? POWHash : getHash();
+    }
+
     public long getNonce() {
         return nonce;
     }
@@ -76,9 +102,7 @@ public class HybridBlock extends Block {
     }
     
     public boolean meetsDifficulty() {
-        String hash = computeBlockHash(true);
-        String requiredZeros = "0".repeat(difficulty); // difficulty as int (number of zeros)
-        return hash.startsWith(requiredZeros);
+        return PoWTarget.meets(newPOWHeader().hash(nonce), PoWTarget.expand(difficulty));
     }
 
 
@@ -101,6 +125,14 @@ public class HybridBlock extends Block {
         this.timeParameter = timeParameter;
     }
     
+    public long getVDFDuration() {
+        return vdfDuration;
+    }
+
+    public void setVDFDuration(long vdfDuration) {
+        this.vdfDuration = vdfDuration;
+    }
+    
     public boolean hasVdfProof() {
         return vdfProof != null;
     }
@@ -132,8 +164,9 @@ public class HybridBlock extends Block {
     public void printBlock() {
         super.printBlock();
         System.out.println("Nonce: " + nonce);
-        System.out.println("Difficulty: " + difficulty);
+        System.out.println("Difficulty: " + String.format("0x%08x", difficulty));
         System.out.println("Time Parameter: " + timeParameter);
+        System.out.println("VDF Duration: " + vdfDuration + " ms");
         System.out.println("VDF Proof: " + (vdfProof != null ? vdfProof.toString() : "null"));
         System.out.println("Finalized: " + finalized);
     }
@@ -0,0 +1,178 @@
+package pt.tecnico.ulisboa.blockchain.blocks;
+
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import pt.tecnico.ulisboa.protocol.ClientReq;
+
+// Binary Merkle tree over a block's transactions, with domain-separated hashes:
+//   leaf = SHA-256(0x00 | tx), node = SHA-256(0x01 | left | right)
+// A node without a right sibling moves up unchanged. Nothing is duplicated, so two different
+// transaction lists never share a root.
+// Every level is kept: appending a transaction rehashes only its path to the root, and
+// inclusion proofs are read off the levels.
+public class MerkleTree {
+    private static final byte LEAF = 0x00;
+    private static final byte NODE = 0x01;
+    // Root of a block without transactions
+    private static final byte[] EMPTY_ROOT = PoWHeader.sha256().digest();
+
+    // levels.get(0) are the leaf hashes, the last level holds only the root
+    private final List<List<byte[]>> levels = new ArrayList<>();
+
+    public MerkleTree() {
+        levels.add(new ArrayList<>());
+    }
+
+    public MerkleTree(List<ClientReq> transactions) {
+        this();
+        for (ClientReq tx : transactions) {
+            levels.get(0).add(tx.getLeafHash());
+        }
+        // Bottom-up, one hash per inner node
+        for (List<byte[]> level = levels.get(0); level.size() > 1; level = levels.get(levels.size() - 1)) {
+            List<byte[]> parents = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; 2 * i < level.size(); i++) {
+                parents.add(parent(level, i));
+            }
+            levels.add(parents);
+        }
+    }
+
+    public static byte[] hashLeaf(byte[] data) {
+        MessageDigest digest = PoWHeader.sha256();
+        digest.update(LEAF);
+        return digest.digest(data);
+    }
+
+    private static byte[] hashNode(byte[] left, byte[] right) {
+        MessageDigest digest = PoWHeader.sha256();
+        digest.update(NODE);
+        digest.update(left);
+        return digest.digest(right);
+    }
+
+    // Node `index` of the level above `level`
+    private static byte[] parent(List<byte[]> level, int index) {
+        byte[] left = level.get(2 * index);
+        return 2 * index + 1 < level.size() ? hashNode(left, level.get(2 * index + 1)) : left;
+    }
+
+    // O(log n): only the new leaf's ancestors change
+    public synchronized void append(ClientReq tx) {
+        List<byte[]> leaves = levels.get(0);
+        leaves.add(tx.getLeafHash());
+        int index = leaves.size() - 1;
+        for (int l = 0; levels.get(l).size() > 1; l++) {
+            if (l + 1 == levels.size()) {
+                levels.add(new ArrayList<>());
+            }
+            List<byte[]> parents = levels.get(l + 1);
+            index /= 2;
+            byte[] hash = parent(levels.get(l), index);
+            if (index < parents.size()) {
+                parents.set(index, hash);
+            } else {
+                parents.add(hash);
+            }
+        }
+    }
+
+    public synchronized byte[] getRoot() {
+        List<byte[]> top = levels.get(levels.size() - 1);
+        return top.isEmpty() ? EMPTY_ROOT.clone() : top.get(0).clone();
+    }
+
+    public synchronized int size() {
+        return levels.get(0).size();
+    }
+
+    // Whether the leaves are exactly these transactions as they are now. Leaf hashes are cached
+    // by the transactions themselves, so this costs one comparison per leaf and no hashing.
+    public synchronized boolean covers(List<ClientReq> transactions) {
+        List<byte[]> leaves = levels.get(0);
+        if (leaves.size() != transactions.size()) {
+            return false;
+        }
+        for (int i = 0; i < leaves.size(); i++) {
+            if (!Arrays.equals(leaves.get(i), transactions.get(i).getLeafHash())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Proof that the index-th transaction is in the tree, checked with Proof.verify against the
+    // root alone
+    public synchronized Proof getProof(int index) {
+        int leafCount = size();
+        if (index < 0 || index >= leafCount) {
+            throw new IndexOutOfBoundsException("No transaction at index " + index);
+        }
+        List<byte[]> siblings = new ArrayList<>();
+        int i = index;
+        for (int l = 0; l + 1 < levels.size(); l++) {
+            List<byte[]> level = levels.get(l);
+            int sibling = i ^ 1;
+            if (sibling < level.size()) {
+                siblings.add(level.get(sibling));
+            }
+            i /= 2;
+        }
+        return new Proof(index, leafCount, siblings);
+    }
+
+    // Sibling hashes from the leaf up. Which side each one is on, and which levels have no
+    // sibling, follows from the index and the number of leaves.
+    public static final class Proof implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+        private final int leafCount;
+        private final byte[][] siblings;
+
+        public Proof(int index, int leafCount, List<byte[]> siblings) {
+            this.index = index;
+            this.leafCount = leafCount;
+            this.siblings = siblings.toArray(new byte[0][]);
+        }
+
+        public boolean verify(ClientReq tx, byte[] root) {
+            return verify(tx.getLeafHash(), root);
+        }
+
+        public boolean verify(byte[] leafHash, byte[] root) {
+            if (index < 0 || index >= leafCount) {
+                return false;
+            }
+            byte[] hash = leafHash;
+            int next = 0;
+            for (int i = index, size = leafCount; size > 1; i /= 2, size = (size + 1) / 2) {
+                if (i % 2 == 1 || i + 1 < size) {
+                    if (next == siblings.length) {
+                        return false;
+                    }
+                    byte[] sibling = siblings[next++];
+                    hash = i % 2 == 1 ? hashNode(sibling, hash) : hashNode(hash, sibling);
+                }
+            }
+            return next == siblings.length && Arrays.equals(hash, root);
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getLeafCount() {
+            return leafCount;
+        }
+
+        public List<byte[]> getSiblings() {
+            return Collections.unmodifiableList(Arrays.asList(siblings));
+        }
+    }
+}
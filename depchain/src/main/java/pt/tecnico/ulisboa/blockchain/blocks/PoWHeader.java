@@ -0,0 +1,91 @@
+package pt.tecnico.ulisboa.blockchain.blocks;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// Binary PoW header of a HybridBlock, 84 bytes:
+//   prevHash (32) | transactions Merkle root (32) | difficulty (4, big-endian)
+//   | timestamp (8, big-endian, ms) | nonce (8, little-endian)
+// where difficulty is the compact target (see PoWTarget). The timestamp drives retargeting,
+// so it is committed here and bounded by PoWValidator.
+// prevHash and the root fill exactly one SHA-256 block, so the digest keeps that block already
+// compressed (the midstate) and each nonce costs one clone and a single compression.
+// Not thread-safe: every mining thread needs its own header.
+public final class PoWHeader {
+    public static final int HASH_BYTES = 32;
+    public static final int SIZE = 2 * HASH_BYTES + Integer.BYTES + 2 * Long.BYTES;
+
+    private final byte[] prefix = new byte[SIZE - Long.BYTES];
+    private final MessageDigest midstate;
+    private final byte[] nonceBytes = new byte[Long.BYTES];
+    private final byte[] digest = new byte[HASH_BYTES];
+
+    PoWHeader(String prevHash, String transactionsHash, int difficulty, long timestamp) {
+        System.arraycopy(toHashBytes(prevHash), 0, prefix, 0, HASH_BYTES);
+        System.arraycopy(toHashBytes(transactionsHash), 0, prefix, HASH_BYTES, HASH_BYTES);
+        prefix[2 * HASH_BYTES] = (byte) (difficulty >>> 24);
+        prefix[2 * HASH_BYTES + 1] = (byte) (difficulty >>> 16);
+        prefix[2 * HASH_BYTES + 2] = (byte) (difficulty >>> 8);
+        prefix[2 * HASH_BYTES + 3] = (byte) difficulty;
+        for (int i = 0; i < Long.BYTES; i++) {
+            prefix[2 * HASH_BYTES + Integer.BYTES + i] = (byte) (timestamp >>> (8 * (Long.BYTES - 1 - i)));
+        }
+
+        this.midstate = sha256();
+        midstate.update(prefix);
+    }
+
+    // SHA-256 of the header with `nonce`. The returned array is reused by the next call.
+    public byte[] hash(long nonce) {
+        writeNonce(nonce);
+        try {
+            MessageDigest attempt = (MessageDigest) midstate.clone();
+            attempt.update(nonceBytes);
+            attempt.digest(digest, 0, HASH_BYTES);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to hash PoW header", e);
+        }
+        return digest;
+    }
+
+    // The full header with `nonce`, for hashes that extend it (see HybridBlock.computeBlockHash)
+    public byte[] encode(long nonce) {
+        writeNonce(nonce);
+        byte[] header = new byte[SIZE];
+        System.arraycopy(prefix, 0, header, 0, prefix.length);
+        System.arraycopy(nonceBytes, 0, header, prefix.length, Long.BYTES);
+        return header;
+    }
+
+    private void writeNonce(long nonce) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            nonceBytes[i] = (byte) (nonce >>> (8 * i));
+        }
+    }
+
+    // Hashes are stored as hex strings; anything else (e.g. a placeholder prevHash) is hashed
+    // down to 32 bytes, and a missing hash is all zeros
+    private static byte[] toHashBytes(String hash) {
+        if (hash == null) {
+            return new byte[HASH_BYTES];
+        }
+        if (hash.length() == 2 * HASH_BYTES && HexFormat.isHexDigit(hash.charAt(0))) {
+            try {
+                return HexFormat.of().parseHex(hash);
+            } catch (IllegalArgumentException e) {
+                // not hex after all
+            }
+        }
+        return sha256().digest(hash.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not found", e);
+        }
+    }
+}
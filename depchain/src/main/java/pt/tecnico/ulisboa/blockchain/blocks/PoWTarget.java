@@ -0,0 +1,82 @@
+package pt.tecnico.ulisboa.blockchain.blocks;
+
+import java.math.BigInteger;
+
+// PoW difficulty as a 256-bit target: a header hash is valid when, read as an unsigned
+// big-endian number, it is <= the target. Blocks carry the target in compact form (the
+// 4-byte difficulty of the PoW header): exponent byte = length of the target in bytes,
+// followed by a 23-bit mantissa, as in Bitcoin's nBits.
+public final class PoWTarget {
+    public static final BigInteger MAX = BigInteger.ONE.shiftLeft(8 * PoWHeader.HASH_BYTES).subtract(BigInteger.ONE);
+
+    private static final int MANTISSA_MASK = 0x007fffff;
+    private static final int SIGN_BIT = 0x00800000;
+
+    private PoWTarget() {
+    }
+
+    public static BigInteger fromCompact(int bits) {
+        int size = bits >>> 24;
+        int mantissa = bits & MANTISSA_MASK;
+        if ((bits & SIGN_BIT) != 0) {
+            throw new IllegalArgumentException("Negative compact target: " + Integer.toHexString(bits));
+        }
+        if (size <= 3) {
+            return BigInteger.valueOf(mantissa >>> (8 * (3 - size)));
+        }
+        return BigInteger.valueOf(mantissa).shiftLeft(8 * (size - 3));
+    }
+
+    // Rounds down to the 23-bit mantissa, so the encoded target is never easier than `target`
+    public static int toCompact(BigInteger target) {
+        if (target.signum() <= 0 || target.compareTo(MAX) > 0) {
+            throw new IllegalArgumentException("Target out of range: " + target.toString(16));
+        }
+        int size = (target.bitLength() + 7) / 8;
+        int mantissa = size <= 3
+                ? target.intValue() << (8 * (3 - size))
+                : target.shiftRight(8 * (size - 3)).intValue();
+        // The mantissa's top bit is a sign bit, so shift into the next byte instead
+        if ((mantissa & SIGN_BIT) != 0) {
+            mantissa >>>= 8;
+            size++;
+        }
+        return (size << 24) | mantissa;
+    }
+
+    // Target equivalent to the old "number of leading zero hex digits" difficulty
+    public static int fromLeadingZeros(int zeros) {
+        return toCompact(MAX.shiftRight(4 * zeros));
+    }
+
+    // The 32-byte big-endian target, for comparing digests directly
+    public static byte[] expand(int bits) {
+        byte[] raw = fromCompact(bits).toByteArray();
+        byte[] target = new byte[PoWHeader.HASH_BYTES];
+        int length = Math.min(raw.length, target.length);
+        System.arraycopy(raw, raw.length - length, target, target.length - length, length);
+        return target;
+    }
+
+    // hash <= target, both 32-byte big-endian
+    public static boolean meets(byte[] hash, byte[] target) {
+        for (int i = 0; i < PoWHeader.HASH_BYTES; i++) {
+            int h = hash[i] & 0xFF;
+            int t = target[i] & 0xFF;
+            if (h != t) {
+                return h < t;
+            }
+        }
+        return true;
+    }
+
+    // Whether `bits` requires at least as much work as `required` (a target no larger)
+    public static boolean isAtLeastAsHard(int bits, int required) {
+        return fromCompact(bits).compareTo(fromCompact(required)) <= 0;
+    }
+
+    // Expected number of hashes to meet `bits`
+    public static double expectedAttempts(int bits) {
+        return MAX.doubleValue() / (fromCompact(bits).doubleValue() + 1);
+    }
+}
@@ -1,148 +1,254 @@
 package pt.tecnico.ulisboa.consensus;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
+import pt.tecnico.ulisboa.Config;
+import pt.tecnico.ulisboa.blockchain.BlockBuilder;
+import pt.tecnico.ulisboa.blockchain.BlockTree;
+import pt.tecnico.ulisboa.blockchain.OrphanBlocks;
 import pt.tecnico.ulisboa.blockchain.blocks.Block;
 import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
-import pt.tecnico.ulisboa.client.Client;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.hybrid.ChainState;
 import pt.tecnico.ulisboa.consensus.pow_plus_posw.hybrid.HybridConsensus;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.hybrid.MiningPipeline;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.metrics.MetricsServer;
 import pt.tecnico.ulisboa.protocol.ClientReq;
-import pt.tecnico.ulisboa.server.Server;
+import pt.tecnico.ulisboa.utils.types.Logger;
 
+// Block production as a race per height: the mining pipeline mines on the current head while
+// the receiver thread validates blocks proposed by other nodes. Both feed `candidates`, which
+// go into the block tree; the first one that becomes the head (extending it, or a heavier
+// fork) ends the round. Our own winning blocks are broadcast. If the winner is not a block
+// the pipeline mined, the pipeline is restarted on it (PoW stopped, VDFs cancelled).
+// Every block in the tree has its ChainState (difficulty, median time past, VDF T for its
+// children), so blocks are mined and validated against their own branch, whichever the head is.
+// Proposed blocks whose parent is unknown wait in `orphans` until it is added.
 public class ConsensusManager {
     private final AtomicBoolean networkReady = new AtomicBoolean(true);
     private final Map<String, Long> nodeLastSeen = new ConcurrentHashMap<>();
-    private List<Block> recentBlocks;
-    private List<Block> proposedBlocks = new ArrayList<>();
-    private ConsensusInterface consensus = new HybridConsensus();
-    private List<ClientReq> receivedTransactions;
-
-    public ConsensusManager(List<Block> recentBlocks, List<ClientReq> rcvTxs) {
-        this.receivedTransactions = rcvTxs;
-
-        if (recentBlocks == null) {
-            this.recentBlocks = new ArrayList<>();
-            this.recentBlocks.add(new HybridBlock()); 
-        } else {
-            this.recentBlocks = recentBlocks;
+    private final BlockTree blockTree;
+    // By link hash, for every block in blockTree; written by the consensus thread only
+    private final Map<String, ChainState> states = new ConcurrentHashMap<>();
+    // Proposed by other nodes, not validated yet
+    private final BlockingQueue<Block> proposedBlocks = new LinkedBlockingQueue<>();
+    private final OrphanBlocks orphans = new OrphanBlocks(Config.MAX_ORPHAN_BLOCKS);
+    // Our mined blocks and validated proposed blocks
+    private final BlockingQueue<Candidate> candidates = new LinkedBlockingQueue<>();
+    private final HybridConsensus consensus = new HybridConsensus();
+    private final BlockingDeque<ClientReq> receivedTransactions;
+    private final BlockBuilder blockBuilder = new BlockBuilder();
+    private final MiningPipeline pipeline;
+    private volatile Consumer<Block> broadcaster = block -> {};
+    private volatile Consumer<HybridBlock> finalizedHandler = block -> {};
+    private volatile Thread consensusThread = null;
+    private final int metricsPort;
+
+    public ConsensusManager(List<Block> recentBlocks, BlockingDeque<ClientReq> rcvTxs) {
+        this(recentBlocks, rcvTxs, Config.METRICS_PORT);
+    }
+
+    // Nodes sharing a host each need their own metrics port, <= 0 disables it
+    public ConsensusManager(List<Block> recentBlocks, BlockingDeque<ClientReq> rcvTxs, int metricsPort) {
+        this.metricsPort = metricsPort;
+        this.receivedTransactions = rcvTxs != null ? rcvTxs : new LinkedBlockingDeque<>();
+
+        HybridBlock root = recentBlocks == null || recentBlocks.isEmpty()
+                ? HybridBlock.genesis()
+                : (HybridBlock) recentBlocks.get(recentBlocks.size() - 1);
+        this.blockTree = new BlockTree(root, Config.FINALITY_DEPTH, Config.MAX_FORKS_PER_HEIGHT);
+
+        List<HybridBlock> chain = new ArrayList<>();
+        if (recentBlocks != null) {
+            for (Block block : recentBlocks) {
+                chain.add((HybridBlock) block);
+            }
         }
+        states.put(root.getLinkHash(), consensus.stateAfter(chain));
+
+        this.pipeline = consensus.newPipeline(() -> blockBuilder.take(receivedTransactions),
+                block -> candidates.offer(new Candidate(block, true)));
+    }
+
+    private record Candidate(HybridBlock block, boolean mined) {
     }
 
+    // Runs until the network is no longer ready or the thread is interrupted; the manager
+    // cannot be started again after that
     public void startConsensus() {
-        while (networkReady.get()) {
-            // // Shared state for thread competition
-            // boolean raceFinished = false;
-            // Block finalizedBlock = null;
-            
-            // // Create mining thread
-            // Thread rcvProposedBlocksThread;
-            // Thread miningThread = new Thread(() -> {
-            //     try {
-            //         // Wait for transactions
-            //         while (receivedTransactions.isEmpty() && !Thread.currentThread().isInterrupted()) {
-            //             Thread.sleep(100);
-            //         }
-                    
-            //         if (Thread.currentThread().isInterrupted()) return;
-                    
-            //         // Mine new block
-            //         Block previousBlock = recentBlocks.get(recentBlocks.size() - 1);
-            //         Block newBlock = consensus.mineBlock(previousBlock, receivedTransactions);
-                    
-            //         // Check if we won the race
-            //         synchronized (this) {
-            //             if (!raceFinished) {
-            //                 raceFinished = true;
-            //                 finalizedBlock = newBlock;
-            //                 System.out.println("Mining thread WON! Block mined: " + newBlock.getHash());
-            //                 rcvProposedBlocksThread.interrupt();
-            //             }
-            //         }
-                    
-            //     } catch (InterruptedException e) {
-            //         System.out.println("Mining thread interrupted by received block");
-            //     } catch (Exception e) {
-            //         e.printStackTrace();
-            //     }
-            // });
-            
-            // // Create block receiving thread
-            // rcvProposedBlocksThread = new Thread(() -> {
-            //     try {
-            //         while (!Thread.currentThread().isInterrupted()) {
-            //             // Check for proposed blocks from network
-            //             if (!proposedBlocks.isEmpty()) {
-            //                 Block proposedBlock = proposedBlocks.remove(0);
-                            
-            //                 if (consensus.validateBlock(proposedBlock)) {
-            //                     // Check if we won the race
-            //                     synchronized (this) {
-            //                         if (!raceFinished) {
-            //                             raceFinished = true;
-            //                             finalizedBlock = proposedBlock;
-            //                             System.out.println("Receive thread WON! Block received: " + proposedBlock.getHash());
-            //                             miningThread.interrupt();
-            //                             return;
-            //                         }
-            //                     }
-            //                 } else {
-            //                     System.out.println("Invalid proposed block: " + proposedBlock.getHash());
-            //                 }
-            //             }
-            //             Thread.sleep(100);
-            //         }
-                    
-            //     } catch (InterruptedException e) {
-            //         System.out.println("Receive thread interrupted by mining completion");
-            //     } catch (Exception e) {
-            //         e.printStackTrace();
-            //     }
-            // });
-            
-            // // Start both threads
-            // miningThread.start();
-            // rcvProposedBlocksThread.start();
-            
-            // // Wait for one thread to win
-            // try {
-            //     miningThread.join();
-            //     rcvProposedBlocksThread.join();
-            // } catch (InterruptedException e) {
-            //     e.printStackTrace();
-            // }
-            
-            // // Process the winning block
-            // if (finalizedBlock != null) {
-            //     // Update blockchain state
-            //     recentBlocks.add(finalizedBlock);
-            //     proposedBlocks.add(finalizedBlock);
-                
-            //     // Start broadcasting thread
-            //     Thread broadcastThread = new Thread(() -> {
-            //         try {
-            //             System.out.println("Broadcasting block: " + finalizedBlock.getHash());
-                        
-            //         } catch (Exception e) {
-            //             e.printStackTrace();
-            //         }
-            //     });
-                
-            //     broadcastThread.setName("Broadcast Thread");
-            //     broadcastThread.start();
-            // }
+        consensusThread = Thread.currentThread();
+        Thread receiver = new Thread(this::receiveBlocks, "block-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+
+        MetricsServer metrics = startMetricsServer();
+        try {
+            HybridBlock head = blockTree.getHead();
+            pipeline.follow(head, states.get(head.getLinkHash()));
+            while (networkReady.get()) {
+                Candidate winner = null;
+                while (winner == null) {
+                    Candidate candidate = candidates.take();
+                    HybridBlock block = candidate.block();
+                    if (!blockTree.add(block)) {
+                        continue;
+                    }
+                    states.put(block.getLinkHash(), states.get(block.getPrevHash()).next(block));
+                    proposedBlocks.addAll(orphans.takeChildren(block.getLinkHash()));
+                    // Adding may have evicted a weak fork or re-rooted the tree
+                    states.keySet().removeIf(hash -> !blockTree.contains(hash));
+                    for (HybridBlock finalized : blockTree.takeFinalized()) {
+                        finalizedHandler.accept(finalized);
+                    }
+                    // Side forks (and leftovers from earlier rounds) are kept without ending the round
+                    if (blockTree.getHead() == block) {
+                        winner = candidate;
+                    }
+                }
+
+                // The pipeline goes on if it mined the winner, otherwise it is stopped and
+                // reports what it was working on
+                HybridBlock block = winner.block();
+                List<ClientReq> dropped = pipeline.follow(block, states.get(block.getLinkHash()));
+                if (winner.mined()) {
+                    broadcaster.accept(block);
+                } else {
+                    Logger.LOG("Accepted proposed block " + block.getHash() + " at height " + block.getHeight());
+                }
+                requeue(head, block, dropped);
+                head = block;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Closed before the pipeline stops, so the proofs in progress are kept to resume on restart
+            consensus.close();
+            pipeline.close();
+            receiver.interrupt();
+            if (metrics != null) {
+                metrics.close();
+            }
+            consensusThread = null;
+        }
+    }
+
+    private MetricsServer startMetricsServer() {
+        if (metricsPort <= 0) {
+            return null;
+        }
+        try {
+            return new MetricsServer(metricsPort);
+        } catch (IOException e) {
+            Logger.ERROR("Metrics endpoint unavailable on port " + metricsPort, e);
+            return null;
+        }
+    }
+
+    private void receiveBlocks() {
+        try {
+            while (true) {
+                Block block = proposedBlocks.take();
+                if (!(block instanceof HybridBlock) || block.getPrevHash() == null) {
+                    continue;
+                }
+                // Blocks on any known branch may start a heavier fork, so each is checked
+                // against its parent's state
+                ChainState parentState = states.get(block.getPrevHash());
+                if (parentState == null) {
+                    waitForParent(block);
+                } else if (consensus.validateBlock(block, parentState)) {
+                    candidates.put(new Candidate((HybridBlock) block, false));
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    // The consensus thread hands the block back once its parent is added. If that happened
+    // since the parent was looked up, the block is taken back here instead.
+    private void waitForParent(Block block) {
+        if (!orphans.add(block)) {
+            return;
+        }
+        Logger.LOG("Block " + block.getHash() + " at height " + block.getHeight() + " waits for its parent "
+                + block.getPrevHash());
+        if (states.containsKey(block.getPrevHash())) {
+            proposedBlocks.addAll(orphans.takeChildren(block.getPrevHash()));
+        }
+    }
+
+    // After the head moved from `previous` to `winner`, puts back, in order, the transactions of
+    // the blocks a reorg orphaned and those the pipeline dropped, except those the new branch
+    // includes
+    private void requeue(HybridBlock previous, HybridBlock winner, List<ClientReq> dropped) {
+        HybridBlock ancestor = blockTree.commonAncestor(previous, winner);
+
+        Set<ClientReq> included = new HashSet<>();
+        for (HybridBlock block = winner; block != null && block != ancestor; block = blockTree.get(block.getPrevHash())) {
+            included.addAll(block.getTransactions());
+        }
+
+        // Oldest first; without an ancestor the old branch is gone and only our own blocks are left
+        List<ClientReq> orphaned = new ArrayList<>();
+        if (ancestor != null) {
+            List<HybridBlock> branch = new ArrayList<>();
+            for (HybridBlock block = previous; block != ancestor; block = blockTree.get(block.getPrevHash())) {
+                branch.add(0, block);
+            }
+            for (HybridBlock block : branch) {
+                orphaned.addAll(block.getTransactions());
+            }
+        }
+        orphaned.addAll(dropped);
+
+        for (int i = orphaned.size() - 1; i >= 0; i--) {
+            if (!included.contains(orphaned.get(i))) {
+                receivedTransactions.addFirst(orphaned.get(i));
+            }
         }
     }
 
+    // A block received from another node
+    public void proposeBlock(Block block) {
+        proposedBlocks.offer(block);
+    }
+
+    public BlockTree getBlockTree() {
+        return blockTree;
+    }
+
+    // Called with our own blocks once they win their height, to send them to the other nodes
+    public void setBroadcaster(Consumer<Block> broadcaster) {
+        this.broadcaster = broadcaster;
+    }
+
+    // Called, on the consensus thread and in chain order, with every block that becomes final
+    public void setFinalizedBlockHandler(Consumer<HybridBlock> finalizedHandler) {
+        this.finalizedHandler = finalizedHandler;
+    }
+
     public boolean isNetworkReady() {
         return networkReady.get();
     }
     
     public void setNetworkReady(boolean ready) {
         networkReady.set(ready);
+        Thread thread = consensusThread;
+        if (!ready && thread != null) {
+            thread.interrupt(); // wakes startConsensus up from waiting for a block
+        }
     }
     
     public void updateNodeStatus(String nodeId) {
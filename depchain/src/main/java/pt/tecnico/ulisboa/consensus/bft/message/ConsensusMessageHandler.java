@@ -3,6 +3,9 @@ package pt.tecnico.ulisboa.consensus.bft.message;
 import java.io.IOException;
 import java.util.Map;
 import java.util.Queue;
+import java.util.function.Consumer;
+
+import pt.tecnico.ulisboa.blockchain.blocks.Block;
 import pt.tecnico.ulisboa.utils.SerializationUtils;
 import pt.tecnico.ulisboa.utils.types.Logger;
 import pt.tecnico.ulisboa.utils.types.ObservedResource;
@@ -11,9 +14,17 @@ import pt.tecnico.ulisboa.network.MessageHandler;
 public class ConsensusMessageHandler implements MessageHandler {
     
     private Map<Integer, ObservedResource<Queue<ConsensusMessage>>> receivedMessages;
+    // Blocks broadcast by other members, null when they are not expected
+    private Consumer<Block> receivedBlocks;
 
     public ConsensusMessageHandler(Map<Integer, ObservedResource<Queue<ConsensusMessage>>> receivedMessages) {
+        this(receivedMessages, null);
+    }
+
+    public ConsensusMessageHandler(Map<Integer, ObservedResource<Queue<ConsensusMessage>>> receivedMessages,
+            Consumer<Block> receivedBlocks) {
         this.receivedMessages = receivedMessages;
+        this.receivedBlocks = receivedBlocks;
     }
 
     @Override
@@ -27,7 +38,12 @@ public class ConsensusMessageHandler implements MessageHandler {
                 receivedMessages.get(senderId).notifyChange();
 
                 Logger.LOG("Received consensus message of type: " + consensusMessage.getType() + " from node: " + senderId);
-            } 
+            } else if (deserializedObject instanceof Block && receivedBlocks != null) {
+                Block block = (Block) deserializedObject;
+                receivedBlocks.accept(block);
+
+                Logger.LOG("Received block " + block.getHash() + " from node: " + senderId);
+            }
         } catch (IOException | ClassNotFoundException e) {
             Logger.LOG("Failed to deserialize message in onMessage: " + e.getMessage());
         }
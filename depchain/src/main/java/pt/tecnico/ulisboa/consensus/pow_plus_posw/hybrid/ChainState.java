@@ -0,0 +1,52 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.hybrid;
+
+import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.TimeParameterAdjustment;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.pow.DifficultyAdjustment;
+
+// What the children of one block must match, derived from that block's ancestry alone, so
+// every node holding the same chain derives the same values: the PoW difficulty, the
+// median time past their timestamps must exceed and the VDF time parameter T.
+// Immutable: next(child) returns the child's state and leaves this one as it is, so every
+// block of every fork can keep its own (see ConsensusManager). The child shares the
+// retargeting windows with its parent and only adds the new block's entries.
+public final class ChainState {
+    private final DifficultyAdjustment difficulty;
+    private final TimeParameterAdjustment delay; // null while the block's VDF runs, see nextMined
+
+    ChainState(DifficultyAdjustment difficulty, TimeParameterAdjustment delay) {
+        this.difficulty = difficulty;
+        this.delay = delay;
+    }
+
+    // The state of `child`, whose parent is the block this state belongs to
+    public ChainState next(HybridBlock child) {
+        return new ChainState(difficulty.next(child), timeParameterAdjustment().next(child));
+    }
+
+    // The state of `child` as far as its PoW header sets it, while its VDF still runs: the
+    // difficulty and median time past of its children, but not their T, which depends on how
+    // long child's VDF takes (see MiningPipeline)
+    public ChainState nextMined(HybridBlock child) {
+        return new ChainState(difficulty.next(child), null);
+    }
+
+    public int getDifficulty() {
+        return difficulty.getNextDifficulty();
+    }
+
+    public long getMedianTimePast() {
+        return difficulty.getMedianTimePast();
+    }
+
+    public long getTimeParameter() {
+        return timeParameterAdjustment().getNextTimeParameter();
+    }
+
+    private TimeParameterAdjustment timeParameterAdjustment() {
+        if (delay == null) {
+            throw new IllegalStateException("T is unknown until the block's VDF is done");
+        }
+        return delay;
+    }
+}
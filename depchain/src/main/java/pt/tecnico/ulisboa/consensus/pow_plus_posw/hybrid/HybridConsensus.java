@@ -3,21 +3,60 @@ package pt.tecnico.ulisboa.consensus.pow_plus_posw.hybrid;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
+import pt.tecnico.ulisboa.Config;
 import pt.tecnico.ulisboa.blockchain.blocks.Block;
 import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
+import pt.tecnico.ulisboa.blockchain.blocks.PoWTarget;
 import pt.tecnico.ulisboa.consensus.ConsensusInterface;
 import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.PoSWConsensus;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.ProofScheme;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.SequentialProof;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.VDFParameters;
 import pt.tecnico.ulisboa.consensus.pow_plus_posw.pow.PoWConsensus;
 import pt.tecnico.ulisboa.protocol.ClientReq;
+import pt.tecnico.ulisboa.utils.types.Logger;
 
-public class HybridConsensus implements ConsensusInterface {
+public class HybridConsensus implements ConsensusInterface, AutoCloseable {
     private final PoWConsensus powConsensus;
     private final PoSWConsensus poswConsensus;
+    // State after the last block given to adjustDifficulty, for callers that follow one chain
+    private volatile ChainState tip;
     
     public HybridConsensus() {
+        this(ProofScheme.PIETRZAK);
+    }
+
+    public HybridConsensus(ProofScheme proofScheme) {
         this.powConsensus = new PoWConsensus();
-        this.poswConsensus = new PoSWConsensus();
+        this.poswConsensus = new PoSWConsensus(proofScheme);
+        this.tip = new ChainState(powConsensus.newDifficultyAdjustment(),
+                poswConsensus.newTimeParameterAdjustment());
+    }
+
+    // Fixed PoW difficulty (until adjusted) and VDF parameters, T included
+    public HybridConsensus(int difficulty, VDFParameters vdfParams, ProofScheme proofScheme) {
+        this.powConsensus = new PoWConsensus(Config.POW_MINER_THREADS, difficulty);
+        this.poswConsensus = new PoSWConsensus(vdfParams, proofScheme);
+        this.tip = new ChainState(powConsensus.newDifficultyAdjustment(),
+                poswConsensus.newTimeParameterAdjustment());
+    }
+
+    // State of a chain's first block, before any retargeting
+    public ChainState initialState() {
+        return new ChainState(powConsensus.newDifficultyAdjustment(), poswConsensus.newTimeParameterAdjustment());
+    }
+
+    // State after the last of `chain`, replayed from its first block (oldest first)
+    public ChainState stateAfter(List<HybridBlock> chain) {
+        ChainState state = initialState();
+        for (HybridBlock block : chain) {
+            state = state.next(block);
+        }
+        return state;
     }
     
     public static void main (String[] args) {
@@ -26,7 +65,7 @@ public class HybridConsensus implements ConsensusInterface {
         
         HybridConsensus consensus = new HybridConsensus();
 
-        HybridBlock previousBlock = new HybridBlock("0000000000000000", 0, new ArrayList<>(), 10);
+        HybridBlock previousBlock = new HybridBlock("0000000000000000", 0, new ArrayList<>(), PoWTarget.fromLeadingZeros(10));
 
         while (true) {
             try {
@@ -55,6 +94,7 @@ public class HybridConsensus implements ConsensusInterface {
         }
     }
 
+    // On top of the chain fed to adjustDifficulty
     @Override
     public HybridBlock mineBlock(Block previousBlock, List<ClientReq> transactions) {
         if (previousBlock == null || previousBlock instanceof HybridBlock == false) {
@@ -62,68 +102,146 @@ public class HybridConsensus implements ConsensusInterface {
         }
 
         // Phase 1: PoW Block Proposal
-        // System.out.println("Phase 1: Starting PoW mining...");
-
-        long timeSpent = -System.nanoTime();
-
-        HybridBlock proposedBlock = powConsensus.mineBlock(previousBlock, new ArrayList<>());
+        ChainState state = tip;
+        HybridBlock proposedBlock = powConsensus.mineBlock(previousBlock, transactions, state.getDifficulty(), () -> false);
+        proposedBlock.setTimeParameter(state.getTimeParameter());
 
-        timeSpent += System.nanoTime();
-
-        System.out.println("TIME: PoW mining: " + timeSpent + "ns");
+        // Phase 2: PoSW Finalization
+        poswConsensus.finalizeBlock(proposedBlock);
 
-        // System.out.println("Phase 1 Complete: PoW block mined successfully");
+        // Timings of both phases are in ConsensusMetrics
+        return proposedBlock;
+    }
 
-        // Phase 2: PoSW Finalization
-        // System.out.println("Phase 2: Starting PoSW finalization...");
+    // PoW on the calling thread, then PoSW finalization in the background. Cancelling the
+    // returned future (a competing block at the same height won) also stops the VDF.
+    public CompletableFuture<HybridBlock> mineBlockAsync(Block previousBlock, List<ClientReq> transactions) {
+        return mineBlockAsync(previousBlock, transactions, () -> false);
+    }
 
-        timeSpent = -System.nanoTime();
+    // As above; the PoW phase throws CancellationException once `cancelled` turns true
+    public CompletableFuture<HybridBlock> mineBlockAsync(Block previousBlock, List<ClientReq> transactions,
+            BooleanSupplier cancelled) {
+        return mineBlockAsync(previousBlock, tip, transactions, cancelled);
+    }
 
-        poswConsensus.finalizeBlock(proposedBlock);
+    // On any block, `previousState` being that block's state
+    public CompletableFuture<HybridBlock> mineBlockAsync(Block previousBlock, ChainState previousState,
+            List<ClientReq> transactions, BooleanSupplier cancelled) {
+        if (previousBlock == null || previousBlock instanceof HybridBlock == false) {
+            throw new IllegalArgumentException("Previous block must be a valid HybridBlock");
+        }
 
-        timeSpent += System.nanoTime();
+        HybridBlock proposedBlock = powConsensus.mineBlock(previousBlock, transactions,
+                previousState.getDifficulty(), cancelled);
+        proposedBlock.setTimeParameter(previousState.getTimeParameter());
 
-        System.out.println("TIME: PoSW finalizing: " + timeSpent + "ns");
+        CompletableFuture<SequentialProof> proof = poswConsensus.finalizeBlockAsync(proposedBlock);
+        CompletableFuture<HybridBlock> finalized = proof.thenApply(p -> proposedBlock);
+        finalized.whenComplete((block, e) -> {
+            if (finalized.isCancelled()) {
+                proof.cancel(false);
+            }
+        });
+        return finalized;
+    }
 
-        // System.out.println("Phase 2 Complete: PoSW finalization successful");
+    // Pipelined mining, overlapping each block's VDF with the next block's PoW. Nothing runs
+    // until follow(head, state) is called on the returned pipeline.
+    public MiningPipeline newPipeline(MiningPipeline.TransactionSource transactions, Consumer<HybridBlock> onFinalized) {
+        return newPipeline(Config.HYBRID_PIPELINE_DEPTH, transactions, onFinalized);
+    }
 
-        return proposedBlock;
+    MiningPipeline newPipeline(int depth, MiningPipeline.TransactionSource transactions, Consumer<HybridBlock> onFinalized) {
+        return new MiningPipeline(powConsensus, poswConsensus, depth, transactions, onFinalized);
     }
 
+    // As a child of the chain fed to adjustDifficulty
     @Override
     public boolean validateBlock(Block block) {
-        // Both PoW and VDF proofs must be valid
-
-        long timeSpent = -System.nanoTime();
-
-        boolean powValid = powConsensus.validateBlock(block);
+        return validateBlock(block, tip);
+    }
 
-        timeSpent += System.nanoTime();
-        System.out.println("TIME: PoW validation: " + timeSpent + "ns");
+    // `parentState` is the state of the block's parent
+    public boolean validateBlock(Block block, ChainState parentState) {
+        if (block == null || !(block instanceof HybridBlock)) {
+            throw new IllegalArgumentException("Block must be a valid HybridBlock");
+        }
 
-        if (!powValid) {
-            System.out.println("PoW validation failed for block: " + block.getHash());
+        // Both PoW and VDF proofs must be valid
+        if (!validateHeader((HybridBlock) block, parentState)) {
+            Logger.LOG("PoW or header validation failed for block: " + block.getHash());
             return false;
         }
 
-        timeSpent = -System.nanoTime();
+        if (!poswConsensus.validateBlock(block)) {
+            Logger.LOG("PoSW validation failed for block: " + block.getHash());
+            return false;
+        }
 
-        boolean vdfValid = poswConsensus.validateBlock(block);
+        return true;
+    }
 
-        timeSpent += System.nanoTime();
-        System.out.println("TIME: PoSW validation: " + timeSpent + "ns");
+    // PoW, and the T the chain sets for the block; the proof itself is checked separately
+    private boolean validateHeader(HybridBlock block, ChainState parentState) {
+        return powConsensus.validateBlock(block, parentState.getDifficulty(), parentState.getMedianTimePast())
+                && hasExpectedDelay(block, parentState);
+    }
 
-        // printt vdf params
-        System.out.println("VDF Parameters: " + poswConsensus.getVDFParameters());
-        
-        if (!vdfValid) {
-            System.out.println("PoSW validation failed for block: " + block.getHash());
+    // The duration feeds the next blocks' T, so it must at least fit between the block's
+    // timestamp and now
+    private static boolean hasExpectedDelay(HybridBlock block, ChainState parentState) {
+        if (block.getTimeParameter() != parentState.getTimeParameter()) {
+            Logger.LOG("Block VDF time parameter " + block.getTimeParameter() + " instead of "
+                    + parentState.getTimeParameter() + ": " + block.getHash());
             return false;
         }
-        
-        // System.out.println("Block validation successful for block: " + block.getHash());
+        return block.getVDFDuration() > 0 && block.getTimestamp() + block.getVDFDuration()
+                <= System.currentTimeMillis() + Config.MAX_BLOCK_TIME_DRIFT;
+    }
 
-        return true;
+    // On top of the chain fed to adjustDifficulty, see below
+    public boolean[] validateBlocks(List<? extends Block> blocks) {
+        return validateBlocks(blocks, tip);
+    }
+
+    // Validates a backlog of consecutive blocks, the first one a child of the block whose state
+    // is `parentState`: PoW one by one (cheap), each against the state derived from the blocks
+    // before it, then the VDF proofs of the blocks that passed it, concurrently.
+    // A block is only valid if all blocks before it are, so results is true up to the first
+    // invalid block and false from there on.
+    public boolean[] validateBlocks(List<? extends Block> blocks, ChainState parentState) {
+        boolean[] results = new boolean[blocks.size()];
+        List<Block> powValid = new ArrayList<>();
+
+        ChainState state = parentState;
+        for (int i = 0; i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            if (block == null || !(block instanceof HybridBlock)) {
+                throw new IllegalArgumentException("Block must be a valid HybridBlock");
+            }
+            HybridBlock hybridBlock = (HybridBlock) block;
+            if (i > 0 && !hybridBlock.getPrevHash().equals(((HybridBlock) blocks.get(i - 1)).getLinkHash())) {
+                Logger.LOG("Block does not extend the one before it: " + block.getHash());
+                break;
+            }
+            if (!validateHeader(hybridBlock, state)) {
+                Logger.LOG("PoW or header validation failed for block: " + block.getHash());
+                break;
+            }
+            powValid.add(block);
+            state = state.next(hybridBlock);
+        }
+
+        boolean[] vdfValid = poswConsensus.validateBlocks(powValid);
+        for (int i = 0; i < vdfValid.length; i++) {
+            if (!vdfValid[i]) {
+                Logger.LOG("PoSW validation failed for block: " + powValid.get(i).getHash());
+                break;
+            }
+            results[i] = true;
+        }
+        return results;
     }
 
     @Override
@@ -131,8 +249,15 @@ public class HybridConsensus implements ConsensusInterface {
         throw new UnsupportedOperationException("Use mineBlock instead to handle both PoW and PoSW phases.");
     }
     
-    // Public method for external difficulty adjustment
-    public void adjustDifficulty(List<HybridBlock> recentBlocks) {
-        powConsensus.adjustDifficulty(recentBlocks);
+    // Public method for external difficulty adjustment, once per appended block, for callers
+    // that follow a single chain. Forks keep one ChainState per block instead.
+    public void adjustDifficulty(HybridBlock appended) {
+        tip = tip.next(appended);
+    }
+
+    // Stops the VDF finalizer for good, keeping unfinished proofs for the next start
+    @Override
+    public void close() {
+        poswConsensus.close();
     }
 }
@@ -0,0 +1,252 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.hybrid;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.PoSWConsensus;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.SequentialProof;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.pow.PoWConsensus;
+import pt.tecnico.ulisboa.protocol.ClientReq;
+import pt.tecnico.ulisboa.utils.types.Logger;
+
+// Pipelined hybrid mining: the PoW of block N+1 runs on the miner threads while the VDF of
+// block N runs on the finalizer thread, so sustained throughput approaches
+// max(PoW time, VDF time) instead of their sum.
+//
+// Dependency rules:
+//  - N+1 is mined as soon as N's PoW is done, on N's PoW hash (HybridBlock.getLinkHash), at
+//    the difficulty and median time past N's header sets (ChainState.nextMined)
+//  - N+1's T depends on how long N's VDF took, so N+1's VDF starts once N is finalized, with
+//    the T of N's full state. Blocks are finalized, and onFinalized runs, in height order.
+//  - if N never finalizes (its proof failed), N+1 and everything above it fail too and the
+//    run stops; their transactions are returned by the next follow or stop
+//  - at most `depth` mined blocks wait for their VDF while the next one is mined, so the PoW
+//    side cannot run arbitrarily far ahead of the sequential one. Depth 0 mines sequentially.
+//  - follow(head) with a block the run did not produce (a competing block won, a reorg)
+//    stops the run: the PoW being mined and every VDF in flight are cancelled
+public class MiningPipeline implements AutoCloseable {
+    // Transactions of the next block; may wait until there are some
+    public interface TransactionSource {
+        List<ClientReq> take() throws InterruptedException;
+    }
+
+    private final PoWConsensus pow;
+    private final PoSWConsensus posw;
+    private final int depth;
+    private final TransactionSource transactions;
+    private final Consumer<HybridBlock> onFinalized;
+    private Run current = null; // guarded by this
+
+    MiningPipeline(PoWConsensus pow, PoSWConsensus posw, int depth, TransactionSource transactions,
+            Consumer<HybridBlock> onFinalized) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Pipeline depth cannot be negative");
+        }
+        this.pow = pow;
+        this.posw = posw;
+        this.depth = depth;
+        this.transactions = transactions;
+        this.onFinalized = onFinalized;
+    }
+
+    // Mines on top of `head`, whose state is `headState`. A run that produced `head` goes on;
+    // any other is stopped first and a new one starts on `head`. Returns the transactions of
+    // what the stopped run dropped (see stop).
+    public synchronized List<ClientReq> follow(HybridBlock head, ChainState headState) throws InterruptedException {
+        if (current != null && current.advanceTo(head)) {
+            return List.of();
+        }
+        List<ClientReq> dropped = stop();
+        Run run = new Run(head, headState);
+        current = run;
+        run.thread = new Thread(() -> mine(run), "mining-pipeline");
+        run.thread.setDaemon(true);
+        run.thread.start();
+        return dropped;
+    }
+
+    // Stops mining and waits for it. Returns, oldest first, the transactions of the blocks the
+    // run mined that had not become the head yet and of the block it was mining, for the
+    // caller to put back.
+    public synchronized List<ClientReq> stop() throws InterruptedException {
+        Run run = current;
+        current = null;
+        if (run == null) {
+            return List.of();
+        }
+        run.stop();
+        run.thread.join();
+        return run.dropped();
+    }
+
+    // Without waiting; the proofs cancelled here keep their snapshots if the finalizer was
+    // closed first (see FinalizationService.close)
+    @Override
+    public synchronized void close() {
+        if (current != null) {
+            current.stop();
+            current = null;
+        }
+    }
+
+    private void mine(Run run) {
+        HybridBlock parent = run.tip;
+        ChainState parentMined = run.tipState; // difficulty and median time past for the next block
+        CompletableFuture<ChainState> parentFinalized = CompletableFuture.completedFuture(run.tipState);
+        try {
+            while (run.awaitCapacity(depth)) {
+                List<ClientReq> txs = run.take(transactions);
+                HybridBlock block = pow.mineBlock(parent, txs, parentMined.getDifficulty(), () -> run.stopped);
+                CompletableFuture<ChainState> finalized = parentFinalized.thenCompose(parentState -> {
+                    block.setTimeParameter(parentState.getTimeParameter());
+                    CompletableFuture<SequentialProof> proof = posw.finalizeBlockAsync(block);
+                    run.track(proof);
+                    return proof.thenApply(p -> {
+                        ChainState state = parentState.next(block);
+                        if (!run.stopped) {
+                            onFinalized.accept(block);
+                        }
+                        return state;
+                    });
+                });
+                run.add(new Stage(block, txs, finalized));
+
+                parent = block;
+                parentMined = parentMined.nextMined(block);
+                parentFinalized = finalized;
+            }
+        } catch (InterruptedException | CancellationException e) {
+            // stopped
+        } catch (RuntimeException e) {
+            // cancelled or interrupted PoW once the run is stopped
+            if (!run.stopped) {
+                Logger.ERROR("Mining pipeline stopped", e);
+            }
+        }
+    }
+
+    // A block mined by a run that has not become the head yet
+    private record Stage(HybridBlock block, List<ClientReq> transactions, CompletableFuture<ChainState> finalized) {
+    }
+
+    // Mining on one head, until a block it did not produce becomes the head
+    private static final class Run {
+        private final HybridBlock tip;
+        private final ChainState tipState;
+        private Thread thread;
+        private volatile boolean stopped = false;
+        private volatile List<ClientReq> mining = List.of();
+        // Oldest first, guarded by this
+        private final Deque<Stage> stages = new ArrayDeque<>();
+        private final Set<CompletableFuture<SequentialProof>> proofs = ConcurrentHashMap.newKeySet();
+
+        Run(HybridBlock tip, ChainState tipState) {
+            this.tip = tip;
+            this.tipState = tipState;
+        }
+
+        // Whether `head` is the tip or one of the run's blocks; the blocks up to it are done
+        synchronized boolean advanceTo(HybridBlock head) {
+            if (stopped) {
+                return false;
+            }
+            if (head.getLinkHash().equals(tip.getLinkHash())) {
+                return true;
+            }
+            for (Stage stage : stages) {
+                if (stage.block().getLinkHash().equals(head.getLinkHash())) {
+                    while (stages.removeFirst() != stage) {
+                        // finalized before it
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        List<ClientReq> take(TransactionSource source) throws InterruptedException {
+            mining = source.take();
+            return mining;
+        }
+
+        synchronized void add(Stage stage) {
+            stages.addLast(stage);
+            mining = List.of();
+            if (stopped) {
+                stage.finalized().cancel(false);
+            }
+        }
+
+        void track(CompletableFuture<SequentialProof> proof) {
+            proofs.add(proof);
+            proof.whenComplete((p, e) -> proofs.remove(proof));
+            if (stopped) {
+                proof.cancel(false);
+            }
+        }
+
+        // Waits until at most `depth` mined blocks are waiting for their VDF. Returns false once
+        // the run is stopped, which a failed VDF also does.
+        boolean awaitCapacity(int depth) throws InterruptedException {
+            while (true) {
+                CompletableFuture<ChainState> oldest = null;
+                synchronized (this) {
+                    if (stopped) {
+                        return false;
+                    }
+                    int waiting = 0;
+                    for (Stage stage : stages) {
+                        if (stage.finalized().isCompletedExceptionally()) {
+                            Logger.LOG("VDF of mined block " + stage.block().getLinkHash() + " failed, mining stopped");
+                            stop();
+                            return false;
+                        }
+                        if (!stage.finalized().isDone()) {
+                            waiting++;
+                            oldest = oldest != null ? oldest : stage.finalized();
+                        }
+                    }
+                    if (waiting <= depth) {
+                        return true;
+                    }
+                }
+                try {
+                    oldest.get();
+                } catch (ExecutionException | CancellationException e) {
+                    // seen on the next pass
+                }
+            }
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            // Cancelling a stage does not reach its proof, which only exists once the parent is final
+            for (Stage stage : stages) {
+                stage.finalized().cancel(false);
+            }
+            for (CompletableFuture<SequentialProof> proof : proofs) {
+                proof.cancel(false);
+            }
+            thread.interrupt();
+        }
+
+        // Once the thread is done
+        synchronized List<ClientReq> dropped() {
+            List<ClientReq> dropped = new ArrayList<>();
+            for (Stage stage : stages) {
+                dropped.addAll(stage.transactions());
+            }
+            dropped.addAll(mining);
+            return dropped;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.metrics;
+
+import java.util.List;
+
+// Telemetry of the hybrid PoW/PoSW consensus, scraped through MetricsServer
+public final class ConsensusMetrics {
+    private static final double[] SECONDS = Histogram.exponentialBuckets(0.001, 2, 18); // 1 ms .. ~131 s
+
+    public static final Counter POW_HASHES = new Counter(
+            "hybrid_pow_hashes_total", "PoW header hashes computed while mining");
+    public static final Gauge POW_HASH_RATE = new Gauge(
+            "hybrid_pow_hash_rate", "Hashes per second over all miner threads, last mined block");
+    public static final Histogram POW_ATTEMPTS = new Histogram(
+            "hybrid_pow_attempts_per_block", "Nonces tried per mined block",
+            Histogram.exponentialBuckets(16, 4, 14));
+    public static final Histogram POW_MINING_SECONDS = new Histogram(
+            "hybrid_pow_mining_seconds", "Time to find a PoW solution", SECONDS);
+    public static final Histogram POW_VALIDATION_SECONDS = new Histogram(
+            "hybrid_pow_validation_seconds", "Time to validate a block's PoW",
+            Histogram.exponentialBuckets(0.00001, 2, 16));
+
+    public static final Counter VDF_SQUARINGS = new Counter(
+            "hybrid_vdf_squarings_total", "Sequential VDF squarings in completed proofs");
+    public static final Gauge VDF_SQUARING_RATE = new Gauge(
+            "hybrid_vdf_squaring_rate", "Sequential squarings per second, last completed proof");
+    public static final Gauge VDF_LOCAL_SQUARING_RATE = new Gauge(
+            "hybrid_vdf_local_squaring_rate", "Sequential squarings per second, last local benchmark");
+    public static final Histogram VDF_PROOF_SECONDS = new Histogram(
+            "hybrid_vdf_proof_seconds", "Time to compute a VDF output and its proof", SECONDS);
+    public static final Histogram VDF_VERIFICATION_SECONDS = new Histogram(
+            "hybrid_vdf_verification_seconds", "Time to verify a VDF proof",
+            Histogram.exponentialBuckets(0.0005, 2, 16));
+    public static final Counter VDF_VERIFICATION_FAILURES = new Counter(
+            "hybrid_vdf_verification_failures_total", "VDF proofs that failed verification");
+
+    private static final List<Metric> ALL = List.of(
+            POW_HASHES, POW_HASH_RATE, POW_ATTEMPTS, POW_MINING_SECONDS, POW_VALIDATION_SECONDS,
+            VDF_SQUARINGS, VDF_SQUARING_RATE, VDF_LOCAL_SQUARING_RATE, VDF_PROOF_SECONDS, VDF_VERIFICATION_SECONDS,
+            VDF_VERIFICATION_FAILURES);
+
+    private ConsensusMetrics() {
+    }
+
+    public static void recordMining(long attempts, long elapsedNanos) {
+        POW_HASHES.add(attempts);
+        POW_ATTEMPTS.observe(attempts);
+        POW_MINING_SECONDS.observe(elapsedNanos / 1e9);
+        if (elapsedNanos > 0) {
+            POW_HASH_RATE.set(attempts * 1e9 / elapsedNanos);
+        }
+    }
+
+    public static void recordPoWValidation(long elapsedNanos) {
+        POW_VALIDATION_SECONDS.observe(elapsedNanos / 1e9);
+    }
+
+    public static void recordProof(long squarings, long elapsedNanos) {
+        VDF_SQUARINGS.add(squarings);
+        VDF_PROOF_SECONDS.observe(elapsedNanos / 1e9);
+        if (elapsedNanos > 0) {
+            VDF_SQUARING_RATE.set(squarings * 1e9 / elapsedNanos);
+        }
+    }
+
+    public static void recordVerification(long elapsedNanos, boolean valid) {
+        VDF_VERIFICATION_SECONDS.observe(elapsedNanos / 1e9);
+        if (!valid) {
+            VDF_VERIFICATION_FAILURES.increment();
+        }
+    }
+
+    // Prometheus text exposition format, version 0.0.4
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Metric metric : ALL) {
+            metric.write(out);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,33 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class Counter implements Metric {
+    private final String name;
+    private final String help;
+    private final LongAdder value = new LongAdder();
+
+    public Counter(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    public void write(StringBuilder out) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(get()).append('\n');
+    }
+}
@@ -0,0 +1,27 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.metrics;
+
+public class Gauge implements Metric {
+    private final String name;
+    private final String help;
+    private volatile double value = 0;
+
+    public Gauge(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    public void set(double value) {
+        this.value = value;
+    }
+
+    public double get() {
+        return value;
+    }
+
+    @Override
+    public void write(StringBuilder out) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,66 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+// Fixed-bucket histogram. Buckets are counted individually and only made cumulative (as
+// Prometheus expects) when written, so observe() is a binary search and two adds.
+public class Histogram implements Metric {
+    private final String name;
+    private final String help;
+    private final double[] bounds; // ascending upper bounds, +Inf is implicit
+    private final LongAdder[] buckets;
+    private final DoubleAdder sum = new DoubleAdder();
+    private final LongAdder count = new LongAdder();
+
+    public Histogram(String name, String help, double... bounds) {
+        this.name = name;
+        this.help = help;
+        this.bounds = bounds.clone();
+        Arrays.sort(this.bounds);
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    // start, start * factor, ..., count bounds in total
+    public static double[] exponentialBuckets(double start, double factor, int count) {
+        double[] bounds = new double[count];
+        for (int i = 0; i < count; i++) {
+            bounds[i] = start * Math.pow(factor, i);
+        }
+        return bounds;
+    }
+
+    public void observe(double value) {
+        int i = Arrays.binarySearch(bounds, value);
+        buckets[i >= 0 ? i : -i - 1].increment();
+        sum.add(value);
+        count.increment();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getSum() {
+        return sum.sum();
+    }
+
+    @Override
+    public void write(StringBuilder out) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name).append("_bucket{le=\"").append(bounds[i]).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += buckets[bounds.length].sum();
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum ").append(getSum()).append('\n');
+        out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,8 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.metrics;
+
+public interface Metric {
+    /**
+     * Appends the metric in the Prometheus text exposition format
+     */
+    void write(StringBuilder out);
+}
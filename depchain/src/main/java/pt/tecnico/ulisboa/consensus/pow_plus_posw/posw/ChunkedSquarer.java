@@ -0,0 +1,89 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import java.math.BigInteger;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+import pt.tecnico.ulisboa.Config;
+
+// Repeated modular squaring on a fixed odd modulus. A run of k squarings is x.modPow(2^k, N):
+// for an odd modulus BigInteger works in Montgomery form internally and HotSpot replaces its
+// Montgomery square/multiply loops with intrinsics, which is ~3x faster per squaring at 2048 bits
+// than squaring 32-bit limbs in Java. Runs are cut into chunks so the exponent 2^k stays small.
+// Not thread-safe: each thread that squares needs its own instance.
+public class ChunkedSquarer {
+    private static final int CHUNK = 1 << 16; // squarings per modPow
+
+    private final BigInteger modulus;
+    private final int n;                 // limbs of the modulus, for snapshots
+    private final BigInteger fullChunk;  // 2^CHUNK
+    private BigInteger value;
+
+    public ChunkedSquarer(BigInteger modulus) {
+        if (modulus.signum() <= 0 || !modulus.testBit(0)) {
+            throw new IllegalArgumentException("Modulus must be positive and odd");
+        }
+        this.modulus = modulus;
+        this.n = (modulus.bitLength() + 31) >>> 5;
+        this.fullChunk = BigInteger.ONE.shiftLeft(CHUNK);
+        this.value = BigInteger.ONE;
+    }
+
+    public ChunkedSquarer(VDFParameters params) {
+        this(params.getModulus());
+    }
+
+    public BigInteger getModulus() {
+        return modulus;
+    }
+
+    // Computes x^(2^count) mod N
+    public BigInteger square(BigInteger x, long count) {
+        load(x);
+        squareInPlace(count);
+        return get();
+    }
+
+    public void load(BigInteger x) {
+        value = x.mod(modulus);
+    }
+
+    public void squareInPlace(long count) {
+        while (count >= CHUNK) {
+            value = value.modPow(fullChunk, modulus);
+            count -= CHUNK;
+        }
+        if (count > 0) {
+            value = value.modPow(BigInteger.ONE.shiftLeft((int) count), modulus);
+        }
+    }
+
+    // Same, giving up with a CancellationException as soon as `cancelled` is seen true
+    public void squareInPlace(long count, BooleanSupplier cancelled) {
+        while (count > 0) {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException("VDF computation cancelled");
+            }
+            long chunk = Math.min(count, Config.VDF_CANCEL_CHECK_INTERVAL);
+            squareInPlace(chunk);
+            count -= chunk;
+        }
+    }
+
+    public BigInteger get() {
+        return value;
+    }
+
+    // Current value as n little-endian limbs, for snapshots (see VDFSnapshot)
+    int limbs() {
+        return n;
+    }
+
+    void exportState(int[] dst) {
+        System.arraycopy(GroupArithmetic.toLimbs(value, n), 0, dst, 0, n);
+    }
+
+    void importState(int[] src) {
+        value = GroupArithmetic.fromLimbs(src, n).mod(modulus);
+    }
+}
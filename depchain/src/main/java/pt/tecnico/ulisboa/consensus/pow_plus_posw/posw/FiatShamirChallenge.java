@@ -0,0 +1,79 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+
+// Hash-to-group of the VDF input and challenge rᵢ = hash(xᵢ, Tᵢ, yᵢ, μᵢ) mod 2^λ, shared by
+// the prover and the verifier.
+// Group elements are hashed as fixed-width big-endian byte strings (the byte length of N)
+// and T as 8 bytes, so the transcript is unambiguous and needs no decimal formatting.
+// Not thread-safe: it reuses one digest and one encoding buffer.
+class FiatShamirChallenge {
+    private final MessageDigest hasher;
+    private final BigInteger modulus;
+    private final int elementBytes;
+    private final BigInteger mask; // 2^λ - 1
+    private final byte[] buffer;
+
+    FiatShamirChallenge(VDFParameters params) {
+        try {
+            this.hasher = MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to initialize hasher", e);
+        }
+        this.modulus = params.getModulus();
+        this.elementBytes = (params.getModulus().bitLength() + 7) / 8;
+        this.mask = params.getChallengeMask();
+        this.buffer = new byte[3 * elementBytes + Long.BYTES];
+    }
+
+    BigInteger hashToGroup(byte[] input) {
+        byte[] hash = hasher.digest(input);
+        BigInteger hashInt = new BigInteger(1, hash);
+        return hashInt.mod(modulus);
+    }
+
+    // H(input)² mod N. Being a square, it and all its powers have Jacobi symbol 1, so outputs
+    // and proofs derived from it pass the QR⁺_N membership check (see WesolowskiEngine)
+    BigInteger hashToSquare(byte[] input) {
+        BigInteger h = hashToGroup(input);
+        return h.multiply(h).mod(modulus);
+    }
+
+    BigInteger compute(BigInteger x, long T, BigInteger y, BigInteger mu) {
+        int offset = writeStatement(x, T, y);
+        writeElement(mu, offset);
+
+        return new BigInteger(1, hasher.digest(buffer)).and(mask);
+    }
+
+    // Wesolowski challenge ℓ: the first prime above hash(x, T, y) with its top bit forced,
+    // so ℓ always has the full digest size (2λ bits for SHA-256 and λ = 128)
+    BigInteger computePrime(BigInteger x, long T, BigInteger y) {
+        int length = writeStatement(x, T, y);
+        hasher.update(buffer, 0, length);
+        byte[] digest = hasher.digest();
+
+        return new BigInteger(1, digest).setBit(8 * digest.length - 1).nextProbablePrime();
+    }
+
+    private int writeStatement(BigInteger x, long T, BigInteger y) {
+        int offset = writeElement(x, 0);
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            buffer[offset++] = (byte) (T >>> (8 * i));
+        }
+        return writeElement(y, offset);
+    }
+
+    private int writeElement(BigInteger value, int offset) {
+        byte[] bytes = value.toByteArray();
+        // toByteArray may carry a leading sign byte, drop it; shorter values are left-padded with zeros
+        int copy = Math.min(bytes.length, elementBytes);
+        int pad = elementBytes - copy;
+        for (int i = 0; i < pad; i++) {
+            buffer[offset + i] = 0;
+        }
+        System.arraycopy(bytes, bytes.length - copy, buffer, offset + pad, copy);
+        return offset + elementBytes;
+    }
+}
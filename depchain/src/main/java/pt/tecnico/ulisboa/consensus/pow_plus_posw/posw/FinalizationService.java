@@ -0,0 +1,99 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.metrics.ConsensusMetrics;
+
+// Runs VDF computations on a dedicated thread. Each submission returns a future that doubles
+// as its cancellation flag: once the future is done (cancelled, completed by someone else or
+// timed out), the squaring loop stops within Config.VDF_CANCEL_CHECK_INTERVAL squarings and
+// the thread moves on to the next submission.
+// Submissions run one at a time, as provers are not thread-safe.
+// A cancelled proof is discarded (see VDFProver.discard), unless the cancellation comes from
+// close: what a proof left to resume it stays for the node's next run.
+public class FinalizationService implements AutoCloseable {
+    private final VDFProver prover; // for submissions that do not bring their own
+    private final ExecutorService executor;
+    private final Set<CompletableFuture<SequentialProof>> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed = false;
+
+    public FinalizationService(VDFProver prover) {
+        this.prover = prover;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "vdf-finalizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<SequentialProof> submit(byte[] input) {
+        return submit(input, proof -> {});
+    }
+
+    // onProof runs on the worker before the future completes, so whoever joins the future
+    // already sees its effects
+    public CompletableFuture<SequentialProof> submit(byte[] input, Consumer<SequentialProof> onProof) {
+        return submit(input, prover, (proof, nanos) -> onProof.accept(proof));
+    }
+
+    // With the prover of one block (e.g. for the T the chain sets for it); onProof also gets
+    // how long the proof took, in nanoseconds
+    public CompletableFuture<SequentialProof> submit(byte[] input, VDFProver prover,
+            ObjLongConsumer<SequentialProof> onProof) {
+        CompletableFuture<SequentialProof> result = new CompletableFuture<>();
+        pending.add(result);
+        result.whenComplete((proof, e) -> pending.remove(result));
+        executor.execute(() -> {
+            if (result.isDone()) {
+                discard(prover, input); // cancelled while queued
+                return;
+            }
+            try {
+                long start = System.nanoTime();
+                SequentialProof proof = prover.computeVDF(input, result::isDone);
+                if (result.isDone()) {
+                    discard(prover, input); // cancelled right at the end
+                    return;
+                }
+                long elapsed = System.nanoTime() - start;
+                ConsensusMetrics.recordProof(proof.getTimeParameter(), elapsed);
+                onProof.accept(proof, elapsed);
+                result.complete(proof);
+            } catch (CancellationException e) {
+                discard(prover, input);
+                result.cancel(false);
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    // Runs `task` on the worker between two proofs, so it does not compete with them
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    private void discard(VDFProver prover, byte[] input) {
+        if (!closed) {
+            prover.discard(input);
+        }
+    }
+
+    // Cancels whatever is queued or running, keeping what is needed to resume it
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdown();
+        for (CompletableFuture<SequentialProof> future : pending) {
+            future.cancel(false);
+        }
+    }
+}
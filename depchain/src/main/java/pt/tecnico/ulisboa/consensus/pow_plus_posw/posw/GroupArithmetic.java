@@ -0,0 +1,151 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import java.math.BigInteger;
+
+// Number-theoretic helpers on the RSA group used by the VDF (Z_N^*, N odd).
+// The Jacobi symbol is computed with the binary algorithm on little-endian 32-bit limbs:
+// strip trailing zeros, swap when a < n, subtract, with no BigInteger created per step.
+public final class GroupArithmetic {
+    private static final long MASK = 0xFFFFFFFFL;
+
+    private GroupArithmetic() {}
+
+    // Jacobi symbol (a / n) for odd n > 1, in {-1, 0, 1}
+    public static int jacobi(BigInteger a, BigInteger n) {
+        if (n.compareTo(BigInteger.ONE) <= 0 || !n.testBit(0)) {
+            throw new IllegalArgumentException("n must be odd and > 1");
+        }
+        int len = (n.bitLength() + 31) >>> 5;
+        return jacobi(toLimbs(a.mod(n), len), toLimbs(n, len), len);
+    }
+
+    // Same as above with N's limbs converted once per VDFParameters instead of on every call
+    static int jacobi(BigInteger a, VDFParameters params) {
+        int[] mod = params.getModulusLimbs();
+        return jacobi(toLimbs(a.mod(params.getModulus()), mod.length), mod.clone(), mod.length);
+    }
+
+    // Membership in QR⁺_N: the elements of [1, N) with Jacobi symbol 1
+    public static boolean isInSignedQuadraticResidues(BigInteger x, BigInteger n) {
+        return x != null && x.signum() > 0 && x.compareTo(n) < 0 && jacobi(x, n) == 1;
+    }
+
+    static boolean isInSignedQuadraticResidues(BigInteger x, VDFParameters params) {
+        return x != null && x.signum() > 0 && x.compareTo(params.getModulus()) < 0 && jacobi(x, params) == 1;
+    }
+
+    // a < n, n odd; both arrays are overwritten
+    private static int jacobi(int[] a, int[] n, int len) {
+        int aLen = length(a, len);
+        int nLen = length(n, len);
+        int result = 1;
+
+        while (aLen > 0) {
+            // (2 / n) = -1 iff n ≡ 3, 5 (mod 8)
+            int zeros = trailingZeros(a);
+            if (zeros > 0) {
+                aLen = shiftRight(a, aLen, zeros);
+                int n8 = n[0] & 7;
+                if ((zeros & 1) == 1 && (n8 == 3 || n8 == 5)) {
+                    result = -result;
+                }
+            }
+
+            // Both odd now; quadratic reciprocity flips the sign iff both are 3 mod 4
+            if (compare(a, aLen, n, nLen) < 0) {
+                if ((a[0] & 3) == 3 && (n[0] & 3) == 3) {
+                    result = -result;
+                }
+                int[] tmp = a; a = n; n = tmp;
+                int tmpLen = aLen; aLen = nLen; nLen = tmpLen;
+            }
+
+            // (a / n) = (a - n / n), and a - n is even
+            aLen = subtract(a, aLen, n, nLen);
+        }
+
+        // n ended up as gcd(a, n)
+        return nLen == 1 && n[0] == 1 ? result : 0;
+    }
+
+    private static int trailingZeros(int[] x) {
+        int i = 0;
+        while (x[i] == 0) {
+            i++;
+        }
+        return 32 * i + Integer.numberOfTrailingZeros(x[i]);
+    }
+
+    private static int shiftRight(int[] x, int len, int bits) {
+        int words = bits >>> 5;
+        int shift = bits & 31;
+        int newLen = len - words;
+        if (shift == 0) {
+            System.arraycopy(x, words, x, 0, newLen);
+        } else {
+            for (int i = 0; i < newLen - 1; i++) {
+                x[i] = (x[i + words] >>> shift) | (x[i + words + 1] << (32 - shift));
+            }
+            x[newLen - 1] = x[len - 1] >>> shift;
+        }
+        for (int i = newLen; i < len; i++) {
+            x[i] = 0;
+        }
+        return length(x, newLen);
+    }
+
+    // a -= b for a >= b, returns the new length of a
+    private static int subtract(int[] a, int aLen, int[] b, int bLen) {
+        long borrow = 0;
+        for (int i = 0; i < aLen; i++) {
+            long d = (a[i] & MASK) - (i < bLen ? b[i] & MASK : 0) - borrow;
+            a[i] = (int) d;
+            borrow = d >>> 63;
+        }
+        return length(a, aLen);
+    }
+
+    private static int compare(int[] a, int aLen, int[] b, int bLen) {
+        if (aLen != bLen) {
+            return aLen < bLen ? -1 : 1;
+        }
+        for (int i = aLen - 1; i >= 0; i--) {
+            int cmp = Integer.compareUnsigned(a[i], b[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private static int length(int[] x, int len) {
+        while (len > 0 && x[len - 1] == 0) {
+            len--;
+        }
+        return len;
+    }
+
+    // Limb conversions, also used for VDF snapshots (see ChunkedSquarer)
+    // Non-negative x into len little-endian limbs
+    static int[] toLimbs(BigInteger x, int len) {
+        byte[] bytes = x.toByteArray();
+        int[] limbs = new int[len];
+        for (int i = 0; i < bytes.length && i < 4 * len; i++) {
+            limbs[i >>> 2] |= (bytes[bytes.length - 1 - i] & 0xFF) << (8 * (i & 3));
+        }
+        return limbs;
+    }
+
+    // The first len little-endian limbs back into a non-negative BigInteger
+    static BigInteger fromLimbs(int[] limbs, int len) {
+        byte[] bytes = new byte[4 * len];
+        for (int i = 0; i < len; i++) {
+            int pos = bytes.length - 1 - 4 * i;
+            bytes[pos] = (byte) limbs[i];
+            bytes[pos - 1] = (byte) (limbs[i] >>> 8);
+            bytes[pos - 2] = (byte) (limbs[i] >>> 16);
+            bytes[pos - 3] = (byte) (limbs[i] >>> 24);
+        }
+        return new BigInteger(1, bytes);
+    }
+}
@@ -1,21 +1,134 @@
 package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
 
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import pt.tecnico.ulisboa.Config;
 import pt.tecnico.ulisboa.blockchain.blocks.Block;
 import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
 import pt.tecnico.ulisboa.consensus.ConsensusInterface;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.metrics.ConsensusMetrics;
 import pt.tecnico.ulisboa.protocol.ClientReq;
+import pt.tecnico.ulisboa.utils.types.Logger;
 
-public class PoSWConsensus implements ConsensusInterface {
-    private final VDFEngine vdfEngine;
-    private final ProofVerifier verifier;
+public class PoSWConsensus implements ConsensusInterface, AutoCloseable {
+    private final ProofScheme scheme;
+    private final Map<ProofScheme, VDFVerifier> verifiers = new EnumMap<>(ProofScheme.class);
+    private final FinalizationService finalizer;
+    // Group and the T of the chain's first block; later blocks use the T the chain sets for them
     private final VDFParameters vdfParams;
+    private VDFProver lastProver; // for lastT, both guarded by this
+    private long lastT;
+    // Proofs a previous run left unfinished, by resumeKey, until a block claims them
+    private final Map<String, Resumed> resumed = new ConcurrentHashMap<>();
+    // Bounds the VDF durations blocks claim; only the node's own instance calibrates it
+    private final VDFCalibrator calibrator;
+    private ScheduledExecutorService calibration = null;
+
+    private record Resumed(CompletableFuture<SequentialProof> proof, AtomicLong nanos) {
+    }
     
     public PoSWConsensus() {
-        this.vdfParams = new VDFParameters();
-        this.vdfEngine = new VDFEngine(vdfParams);
-        this.verifier = new ProofVerifier(vdfParams);
+        this(ProofScheme.PIETRZAK);
+    }
+
+    // The node's own: also resumes the proofs it left unfinished when it last stopped
+    public PoSWConsensus(ProofScheme scheme) {
+        this(VDFParameterRegistry.getDefault(), scheme);
+        startCalibration();
+        resumePending(VDFEngine.DEFAULT_SNAPSHOT_DIR);
+    }
+
+    // Blocks are finalized with `scheme`, but blocks carrying any scheme are accepted
+    public PoSWConsensus(VDFParameters vdfParams, ProofScheme scheme) {
+        this.scheme = scheme;
+        this.vdfParams = vdfParams;
+        this.lastProver = scheme.newProver(vdfParams);
+        this.lastT = vdfParams.getTimeParameter();
+        this.finalizer = new FinalizationService(lastProver);
+        this.calibrator = new VDFCalibrator(vdfParams, Config.VDF_CALIBRATION_SQUARINGS, Config.VDF_MAX_SPEEDUP);
+        // Verifiers take T from the proof, the group is all they need
+        for (ProofScheme s : ProofScheme.values()) {
+            verifiers.put(s, timed(s.newVerifier(vdfParams)));
+        }
+    }
+
+    // Retargets T from the chain towards Config.VDF_TARGET_DELAY per block, see ChainState
+    public TimeParameterAdjustment newTimeParameterAdjustment() {
+        return new TimeParameterAdjustment(Config.VDF_TARGET_DELAY, Config.VDF_RETARGET_WINDOW,
+                vdfParams.getTimeParameter());
+    }
+
+    // Measures the local squaring rate before any block is validated, then again every
+    // Config.VDF_CALIBRATION_INTERVAL on the finalizer thread, between proofs
+    private void startCalibration() {
+        Logger.LOG("Local VDF squaring rate: " + Math.round(calibrator.calibrate()) + "/s");
+        calibration = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "vdf-calibration");
+            thread.setDaemon(true);
+            return thread;
+        });
+        calibration.scheduleAtFixedRate(() -> {
+            try {
+                finalizer.execute(calibrator::calibrate);
+            } catch (RejectedExecutionException e) {
+                // closed
+            }
+        }, Config.VDF_CALIBRATION_INTERVAL, Config.VDF_CALIBRATION_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    // T moves a little every few blocks at most, so the prover of the last one is usually reused
+    private synchronized VDFProver proverFor(long T) {
+        if (lastT != T) {
+            lastProver = scheme.newProver(vdfParams.withTimeParameter(T));
+            lastT = T;
+        }
+        return lastProver;
+    }
+    
+    // Restarts the proofs a previous run left snapshots of (only Pietrzak provers keep them),
+    // so the blocks they were for can still be finalized without squaring from the start.
+    // Stale snapshots are deleted on the way.
+    private void resumePending(Path snapshotDir) {
+        for (VDFSnapshot.Pending chain : VDFSnapshot.pending(snapshotDir, Config.VDF_SNAPSHOT_MAX_AGE)) {
+            if (scheme != ProofScheme.PIETRZAK || !TimeParameterAdjustment.isAcceptable(chain.timeParameter())) {
+                continue;
+            }
+            AtomicLong nanos = new AtomicLong();
+            CompletableFuture<SequentialProof> proof = finalizer.submit(chain.input(),
+                    proverFor(chain.timeParameter()), (p, elapsed) -> nanos.set(elapsed));
+            resumed.put(resumeKey(chain.input(), chain.timeParameter()), new Resumed(proof, nanos));
+        }
+        if (!resumed.isEmpty()) {
+            Logger.LOG("Resuming " + resumed.size() + " unfinished VDF proofs");
+        }
+    }
+
+    private static String resumeKey(byte[] input, long T) {
+        return HexFormat.of().formatHex(input) + "/" + T;
+    }
+
+    // Records every verification, those of verifyAll included, in ConsensusMetrics
+    private static VDFVerifier timed(VDFVerifier verifier) {
+        return (input, proof) -> {
+            long start = System.nanoTime();
+            boolean valid = verifier.verifyVDFProof(input, proof);
+            ConsensusMetrics.recordVerification(System.nanoTime() - start, valid);
+            return valid;
+        };
     }
     
     @Override
@@ -25,6 +138,21 @@ public class PoSWConsensus implements ConsensusInterface {
 
     @Override
     public void finalizeBlock(Block _block) {
+        // Compute VDF proof (this takes time T)
+        try {
+            finalizeBlockAsync(_block).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // Computes the block's VDF proof on the finalizer thread. The proof is set on the block
+    // before the future completes. Cancelling the future (e.g. when a competing block at
+    // the same height is accepted) stops the squaring loop within a bounded number of steps.
+    public CompletableFuture<SequentialProof> finalizeBlockAsync(Block _block) {
         if (_block == null || !(_block instanceof HybridBlock)) {
             throw new IllegalArgumentException("Previous block must be a valid HybridBlock");
         }
@@ -33,17 +161,38 @@ public class PoSWConsensus implements ConsensusInterface {
 
         // Generate VDF input from block hash
         byte[] vdfInput = generateVDFInput(block);
-        
-        // Compute VDF proof (this takes time T)
-        long startTime = System.nanoTime();  // Start timer
-        SequentialProof proof = vdfEngine.computeVDF(vdfInput);
-        long endTime = System.nanoTime();
-        
-        double elapsedSeconds = (endTime - startTime) / 1e6;
-        System.out.printf("[PRECISE] VDF Solving Time: %.3f ms (T=%d)%n", 
-                            elapsedSeconds, vdfParams.getTimeParameter());
-        
-        // Add VDF proof to the block
+
+        // Blocks of a chain carry the T it sets for them, standalone ones use the configured T
+        long T = block.getTimeParameter() > 0 ? block.getTimeParameter() : vdfParams.getTimeParameter();
+
+        // A proof resumed at startup is this block's if the input matches; the others were for
+        // blocks that lost their round while the node was down
+        Resumed earlier = resumed.remove(resumeKey(vdfInput, T));
+        for (Resumed unclaimed : resumed.values()) {
+            unclaimed.proof().cancel(false);
+        }
+        resumed.clear();
+        if (earlier != null) {
+            // Its duration only counts the squarings done since the restart
+            CompletableFuture<SequentialProof> result = earlier.proof().thenApply(proof -> {
+                attach(block, proof, earlier.nanos().get());
+                return proof;
+            });
+            result.whenComplete((proof, e) -> {
+                if (result.isCancelled()) {
+                    earlier.proof().cancel(false);
+                }
+            });
+            return result;
+        }
+
+        return finalizer.submit(vdfInput, proverFor(T), (proof, nanos) -> attach(block, proof, nanos));
+    }
+
+    private static void attach(HybridBlock block, SequentialProof proof, long nanos) {
+        // T and the duration are part of the block hash, so they go in before the proof
+        block.setTimeParameter(proof.getTimeParameter());
+        block.setVDFDuration(Math.max(1, nanos / 1_000_000));
         block.setVDFProof(proof);
         block.setFinalized(true);
     }
@@ -56,18 +205,86 @@ public class PoSWConsensus implements ConsensusInterface {
 
         HybridBlock powBlock = (HybridBlock) block;
         
-        // Verify VDF proof
+        SequentialProof proof = powBlock.getVDFProof();
+        if (!hasAcceptableDelay(powBlock, proof)) {
+            return false;
+        }
+
+        // Verify VDF proof with the scheme recorded in it
         byte[] vdfInput = generateVDFInput(powBlock);
-        return verifier.verifyVDFProof(vdfInput, powBlock.getVDFProof());
+        return verifiers.get(proof.getScheme()).verifyVDFProof(vdfInput, proof);
     }
     
+    // Validates the VDF proofs of a backlog of blocks (e.g. when catching up), results[i] is
+    // what validateBlock returns for blocks.get(i)
+    public boolean[] validateBlocks(List<? extends Block> blocks) {
+        boolean[] results = new boolean[blocks.size()];
+
+        // One group per proof scheme, remembering where each block came from
+        Map<ProofScheme, List<Map.Entry<byte[], SequentialProof>>> groups = new EnumMap<>(ProofScheme.class);
+        Map<ProofScheme, List<Integer>> positions = new EnumMap<>(ProofScheme.class);
+        for (int i = 0; i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            if (block == null || !(block instanceof HybridBlock)) {
+                throw new IllegalArgumentException("Block must be a valid HybridBlock");
+            }
+            HybridBlock powBlock = (HybridBlock) block;
+            SequentialProof proof = powBlock.getVDFProof();
+            if (!hasAcceptableDelay(powBlock, proof)) {
+                continue; // results[i] stays false
+            }
+            groups.computeIfAbsent(proof.getScheme(), k -> new ArrayList<>())
+                    .add(new AbstractMap.SimpleImmutableEntry<>(generateVDFInput(powBlock), proof));
+            positions.computeIfAbsent(proof.getScheme(), k -> new ArrayList<>()).add(i);
+        }
+
+        for (Map.Entry<ProofScheme, List<Map.Entry<byte[], SequentialProof>>> group : groups.entrySet()) {
+            boolean[] groupResults = verifiers.get(group.getKey()).verifyAll(group.getValue());
+            List<Integer> groupPositions = positions.get(group.getKey());
+            for (int i = 0; i < groupResults.length; i++) {
+                results[groupPositions.get(i)] = groupResults[i];
+            }
+        }
+        return results;
+    }
+    
+    // The proof must be for the T the block commits to, and that T within bounds. Whether it
+    // is the T the chain sets for the block depends on its ancestry, see HybridConsensus.
+    // The claimed duration must be one this node's hardware makes plausible, see VDFCalibrator.
+    private boolean hasAcceptableDelay(HybridBlock block, SequentialProof proof) {
+        if (proof == null || proof.getTimeParameter() != block.getTimeParameter()
+                || !TimeParameterAdjustment.isAcceptable(proof.getTimeParameter())) {
+            return false;
+        }
+        if (!calibrator.isPlausible(block.getTimeParameter(), block.getVDFDuration())) {
+            Logger.LOG("Block VDF duration " + block.getVDFDuration() + " ms for T " + block.getTimeParameter()
+                    + " exceeds " + Config.VDF_MAX_SPEEDUP + "x the local squaring rate: " + block.getHash());
+            return false;
+        }
+        return true;
+    }
+
+    public VDFCalibrator getCalibrator() {
+        return calibrator;
+    }
+
     private byte[] generateVDFInput(HybridBlock block) {
         // Use block hash as VDF input
         String blockData = block.getPOWHash();
         return blockData.getBytes();
     }
     
+    // Group and initial T
     public VDFParameters getVDFParameters() {
         return vdfParams;
     }
+
+    // Stops finalizing; proofs in progress keep their snapshots and resume on the next start
+    @Override
+    public void close() {
+        if (calibration != null) {
+            calibration.shutdownNow();
+        }
+        finalizer.close();
+    }
 }
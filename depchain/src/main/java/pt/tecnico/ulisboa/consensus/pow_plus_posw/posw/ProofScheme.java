@@ -0,0 +1,35 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+// Proof formats a SequentialProof can carry. The scheme is part of the proof (and so of the
+// block hash), which lets a node pick the matching verifier for every block it receives.
+public enum ProofScheme {
+    // log₂(T) group elements μᵢ, cheap to produce from the squaring checkpoints
+    PIETRZAK {
+        @Override
+        public VDFProver newProver(VDFParameters params) {
+            return new VDFEngine(params);
+        }
+
+        @Override
+        public VDFVerifier newVerifier(VDFParameters params) {
+            return new ProofVerifier(params);
+        }
+    },
+
+    // A single group element π, verified with two exponentiations
+    WESOLOWSKI {
+        @Override
+        public VDFProver newProver(VDFParameters params) {
+            return new WesolowskiEngine(params);
+        }
+
+        @Override
+        public VDFVerifier newVerifier(VDFParameters params) {
+            return new WesolowskiVerifier(params);
+        }
+    };
+
+    public abstract VDFProver newProver(VDFParameters params);
+
+    public abstract VDFVerifier newVerifier(VDFParameters params);
+}
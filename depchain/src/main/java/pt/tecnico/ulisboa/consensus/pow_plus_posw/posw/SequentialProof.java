@@ -1,18 +1,34 @@
 package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
-public class SequentialProof {
+public class SequentialProof implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private final BigInteger output; // VDF output y
-    private final List<BigInteger> proofElements; // Pietrzak proof π
+    private final BigInteger[] proofElements; // Pietrzak μᵢ, or the single Wesolowski π
     private final long timeParameter; // T value used
+    private final ProofScheme scheme; // Format of proofElements
     private final long timestamp; // When proof was generated
     
     public SequentialProof(BigInteger output, List<BigInteger> proofElements, long timeParameter) {
+        this(output, proofElements, timeParameter, ProofScheme.PIETRZAK);
+    }
+
+    public SequentialProof(BigInteger output, List<BigInteger> proofElements, long timeParameter,
+                           ProofScheme scheme) {
         this.output = output;
-        this.proofElements = proofElements;
+        this.proofElements = proofElements.toArray(new BigInteger[0]);
         this.timeParameter = timeParameter;
+        this.scheme = scheme;
         this.timestamp = System.currentTimeMillis();
     }
     
@@ -21,33 +37,55 @@ public class SequentialProof {
     }
     
     public List<BigInteger> getProofElements() {
-        return proofElements;
+        return Collections.unmodifiableList(Arrays.asList(proofElements));
     }
     
     public long getTimeParameter() {
         return timeParameter;
     }
     
+    public ProofScheme getScheme() {
+        return scheme;
+    }
+    
     public long getTimestamp() {
         return timestamp;
     }
     
-    public int getProofSize() {
-        // Calculate proof size in bytes
-        int size = 0;
-        size += output.toByteArray().length;
-        for (BigInteger element : proofElements) {
-            size += element.toByteArray().length;
+    // What the block hash commits to: scheme | T | y | element count | elements, with the scheme
+    // name and each group element length-prefixed (4 bytes, big-endian) so that no two proofs
+    // share an encoding. The local generation timestamp is left out.
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeBytes(out, scheme.name().getBytes(StandardCharsets.UTF_8));
+            out.writeLong(timeParameter);
+            writeBytes(out, output.toByteArray());
+            out.writeInt(proofElements.length);
+            for (BigInteger element : proofElements) {
+                writeBytes(out, element.toByteArray());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode VDF proof", e);
         }
-        size += 8; // timestamp
-        size += 8; // time parameter
-        return size;
+        return bytes.toByteArray();
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    // Bytes the proof adds to a block, i.e. its encoding
+    public int getProofSize() {
+        return encode().length;
     }
     
     @Override
     public String toString() {
         return "SequentialProof{" +
-                "output=" + output +
+                "scheme=" + scheme +
+                ", output=" + output +
                 ", proofSize=" + getProofSize() + " bytes" +
                 ", timeParameter=" + timeParameter +
                 ", timestamp=" + timestamp +
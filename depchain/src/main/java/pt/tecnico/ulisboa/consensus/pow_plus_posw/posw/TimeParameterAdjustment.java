@@ -0,0 +1,87 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import java.util.Arrays;
+
+import pt.tecnico.ulisboa.Config;
+import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
+import pt.tecnico.ulisboa.utils.types.PersistentArray;
+
+// Per-block retargeting of the VDF time parameter T, so that finalizing a block takes about
+// targetDelay ms. Every block commits the T it used and how long its prover took (see
+// HybridBlock.getVDFDuration), that is a squaring rate. The next T is the median of the last
+// `window` rates times targetDelay: provers much faster or slower than the rest, or lying
+// about their duration, move it only once they are the majority.
+// T only depends on the chain, so validators derive the same value as the prover. It moves
+// by at most a factor MAX_STEP per block, is a multiple of GRANULARITY (so the prover keeps
+// its checkpoint depth) and stays within the range validators accept.
+// Rates are integers (squarings per second) so every node rounds the same way.
+// Immutable: next(block) shares the rate window with this state (see PersistentArray).
+public final class TimeParameterAdjustment {
+    public static final long GRANULARITY = 1L << 16;
+    private static final long MAX_STEP = 2;
+
+    private final long targetDelay; // ms
+    private final int window;
+
+    private final PersistentArray<Long> rates; // squarings per second, ring buffer
+    private final int head; // oldest entry once the window is full
+    private final int count;
+
+    private final long nextTimeParameter;
+
+    public TimeParameterAdjustment(long targetDelay, int window, long initialTimeParameter) {
+        if (targetDelay <= 0 || window < 1) {
+            throw new IllegalArgumentException("Target delay and window must be positive");
+        }
+        this.targetDelay = targetDelay;
+        this.window = window;
+        this.rates = new PersistentArray<>(window);
+        this.head = 0;
+        this.count = 0;
+        this.nextTimeParameter = initialTimeParameter;
+    }
+
+    private TimeParameterAdjustment(TimeParameterAdjustment parent, long rate) {
+        this.targetDelay = parent.targetDelay;
+        this.window = parent.window;
+        if (parent.count < window) {
+            this.head = parent.head;
+            this.count = parent.count + 1;
+            this.rates = parent.rates.set((head + parent.count) % window, rate);
+        } else {
+            this.head = (parent.head + 1) % window;
+            this.count = window;
+            this.rates = parent.rates.set(parent.head, rate);
+        }
+
+        // Until the window is full the rates are in slots 0..count-1
+        long[] sorted = rates.prefix(count).stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        long T = sorted[count / 2] * targetDelay / 1000;
+        T = Math.max(parent.nextTimeParameter / MAX_STEP, Math.min(parent.nextTimeParameter * MAX_STEP, T));
+        this.nextTimeParameter = bound(T / GRANULARITY * GRANULARITY);
+    }
+
+    // The state after `block`, appended to the chain this state belongs to.
+    // Blocks without a proof (genesis) leave T as it is.
+    public TimeParameterAdjustment next(HybridBlock block) {
+        if (block.getTimeParameter() <= 0 || block.getVDFDuration() <= 0) {
+            return this;
+        }
+        return new TimeParameterAdjustment(this, block.getTimeParameter() * 1000 / block.getVDFDuration());
+    }
+
+    // T of the block after the last one fed in
+    public long getNextTimeParameter() {
+        return nextTimeParameter;
+    }
+
+    private static long bound(long T) {
+        return Math.max(Config.VDF_MIN_TIME_PARAMETER, Math.min(Config.VDF_MAX_TIME_PARAMETER, T));
+    }
+
+    // Whether a block's T is one validators accept
+    public static boolean isAcceptable(long T) {
+        return T >= Config.VDF_MIN_TIME_PARAMETER && T <= Config.VDF_MAX_TIME_PARAMETER;
+    }
+}
@@ -0,0 +1,62 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.metrics.ConsensusMetrics;
+
+// Local benchmark of sequential squaring, the yardstick for the VDF durations blocks claim.
+// Trust assumption: a block's duration is its prover's word. T follows the median rate of
+// recent blocks (see TimeParameterAdjustment), so a minority of liars barely moves it, and a
+// duration longer than the real one is bounded by the block's timestamp (see
+// HybridConsensus). That leaves claims of squaring faster than anyone can, which would push
+// T up for everyone: a block claiming more than `maxSpeedup` times the rate measured here is
+// rejected. This assumes no honest prover is that much faster than this node; a node that
+// much slower than the rest rejects their blocks and forks off instead.
+// The rate is timed with the squarer the provers use, on the finalizer thread between proofs
+// (see PoSWConsensus), so it sees the same load the node's own proofs do.
+public class VDFCalibrator {
+    private final VDFParameters params;
+    private final long benchmarkSquarings;
+    private final long maxSpeedup;
+    private volatile double squaringRate = 0; // per second, 0 until measured
+
+    public VDFCalibrator(VDFParameters params, long benchmarkSquarings, long maxSpeedup) {
+        if (benchmarkSquarings <= 0 || maxSpeedup < 1) {
+            throw new IllegalArgumentException("Benchmark length and speedup must be positive");
+        }
+        this.params = params;
+        this.benchmarkSquarings = benchmarkSquarings;
+        this.maxSpeedup = maxSpeedup;
+    }
+
+    // Squarings per second on the calling thread, which it then uses as the local rate.
+    // The faster of two runs, so a cold JIT does not make the first one too strict.
+    public double calibrate() {
+        ChunkedSquarer squarer = new ChunkedSquarer(params);
+        squarer.load(new BigInteger(params.getModulus().bitLength() - 1, new Random()).setBit(0));
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 2; run++) {
+            long start = System.nanoTime();
+            squarer.squareInPlace(benchmarkSquarings);
+            best = Math.min(best, Math.max(1, System.nanoTime() - start));
+        }
+        squaringRate = benchmarkSquarings * 1e9 / best;
+        ConsensusMetrics.VDF_LOCAL_SQUARING_RATE.set(squaringRate);
+        return squaringRate;
+    }
+
+    public double getSquaringRate() {
+        return squaringRate;
+    }
+
+    // Whether T squarings in durationMillis is at most maxSpeedup times the local rate.
+    // Anything passes until the first calibration.
+    public boolean isPlausible(long T, long durationMillis) {
+        double rate = squaringRate;
+        if (rate == 0) {
+            return true;
+        }
+        return durationMillis > 0 && T * 1000.0 / durationMillis <= rate * maxSpeedup;
+    }
+}
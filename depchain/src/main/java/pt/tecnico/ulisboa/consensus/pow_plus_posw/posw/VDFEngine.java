@@ -1,101 +1,184 @@
 package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
 
 import java.math.BigInteger;
-import java.security.MessageDigest;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
-public class VDFEngine {
+import pt.tecnico.ulisboa.Config;
+
+public class VDFEngine implements VDFProver {
     private final VDFParameters params;
-    private final MessageDigest hasher;
+    private final FiatShamirChallenge challenge;
+    private final ChunkedSquarer squarer;
+    private final int checkpointDepth;
+    private final ForkJoinPool pool; // null: the whole proof is computed on the calling thread
+    private final Path snapshotDir;  // null: a restart squares again from x
+
+    public static final Path DEFAULT_SNAPSHOT_DIR = Paths.get(Config.BLOCK_DIRPATH, Config.VDF_SNAPSHOT_DIRPATH);
     
+    // Snapshots long chains under blocks/, so a node restarted mid-finalization resumes them
     public VDFEngine(VDFParameters params) {
-        this.params = params;
-        try {
-            this.hasher = MessageDigest.getInstance("SHA-256");
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to initialize hasher", e);
+        this(params, ForkJoinPool.commonPool(), DEFAULT_SNAPSHOT_DIR);
+    }
+
+    // The squaring chain is always a single thread; the pool only runs the proof-side exponentiations
+    public VDFEngine(VDFParameters params, ForkJoinPool pool) {
+        this(params, pool, null);
+    }
+
+    public VDFEngine(VDFParameters params, ForkJoinPool pool, Path snapshotDir) {
+        this(params, balancedCheckpointDepth(params, pool == null ? 1 : pool.getParallelism()), pool, snapshotDir);
+    }
+
+    public VDFEngine(VDFParameters params, int checkpointDepth) {
+        this(params, checkpointDepth, null);
+    }
+
+    // checkpointDepth d keeps 2^d + 1 group elements while squaring: the first d proof rounds are
+    // then folded from those checkpoints (~2^d·λ multiplications) and only the remaining T/2^d
+    // squarings are redone. d = 0 is the plain prover that squares again for every μᵢ.
+    public VDFEngine(VDFParameters params, int checkpointDepth, ForkJoinPool pool) {
+        this(params, checkpointDepth, pool, null);
+    }
+
+    public VDFEngine(VDFParameters params, int checkpointDepth, ForkJoinPool pool, Path snapshotDir) {
+        if (checkpointDepth < 0) {
+            throw new IllegalArgumentException("Checkpoint depth must be non-negative");
         }
+        this.params = params;
+        this.checkpointDepth = checkpointDepth;
+        this.pool = pool;
+        this.snapshotDir = snapshotDir;
+        this.squarer = new ChunkedSquarer(params);
+        this.challenge = new FiatShamirChallenge(params);
     }
     
-    private BigInteger hashToGroup(byte[] input) {
-        byte[] hash = hasher.digest(input);
-        BigInteger hashInt = new BigInteger(1, hash);
-        return hashInt.mod(params.getModulus());
+    // Minimises the prover overhead: 2^d·λ folding work against T/2^d leftover squarings
+    public static int balancedCheckpointDepth(VDFParameters params) {
+        return balancedCheckpointDepth(params, 1);
+    }
+
+    // Same, when the folding is spread over `parallelism` threads and the leftover squarings are not
+    public static int balancedCheckpointDepth(VDFParameters params, int parallelism) {
+        int logT = 63 - Long.numberOfLeadingZeros(params.getTimeParameter());
+        int logLambda = 31 - Integer.numberOfLeadingZeros(params.getSecurityParameter());
+        int logThreads = 31 - Integer.numberOfLeadingZeros(Math.max(1, parallelism));
+        return Math.max(0, (logT - logLambda + logThreads + 1) / 2);
     }
 
-    private BigInteger sequentialSquaring(BigInteger x, long T) {
+    // √T checkpoints
+    public static int sqrtCheckpointDepth(VDFParameters params) {
+        int logT = 63 - Long.numberOfLeadingZeros(params.getTimeParameter());
+        return (logT + 1) / 2;
+    }
+
+    @Override
+    public ProofScheme getScheme() {
+        return ProofScheme.PIETRZAK;
+    }
+
+    public int getCheckpointDepth() {
+        return checkpointDepth;
+    }
+
+    private BigInteger sequentialSquaring(BigInteger x, long T, BooleanSupplier cancelled) {
         // Compute x^(2^T) mod N sequentially
-        BigInteger result = x;
-        
-        for (long i = 0; i < T; i++) {
-            result = result.multiply(result).mod(params.getModulus());
-        }
-        
-        return result;
+        squarer.load(x);
+        squarer.squareInPlace(T, cancelled);
+        return squarer.get();
     }
 
-    public SequentialProof computeVDF(byte[] input) {
-        BigInteger x = hashToGroup(input);
+    @Override
+    public SequentialProof computeVDF(byte[] input, BooleanSupplier cancelled) {
+        BigInteger x = challenge.hashToGroup(input);
         
         // Compute y = x^(2^T) and proof simultaneously
-        VDFResult result = computeVDFWithProof(x, params.getTimeParameter());
+        VDFResult result = computeVDFWithProof(input, x, params.getTimeParameter(), cancelled);
         
         return new SequentialProof(result.y, result.proofElements, params.getTimeParameter());
     }
 
-    private VDFResult computeVDFWithProof(BigInteger x, long T) {
-        // Step 1: Compute y = x^(2^T) via sequential squaring
-        BigInteger y = sequentialSquaring(x, T);
-        System.out.println("VDF Progress: " + 0 + "%");
+    // A cancelled chain keeps its snapshot, as a node shutting down resumes it on restart;
+    // this drops it once the block it was for lost the race
+    @Override
+    public void discard(byte[] input) {
+        long T = params.getTimeParameter();
+        if (snapshotDir != null && T >= Config.VDF_SNAPSHOT_INTERVAL) {
+            VDFSnapshot.delete(snapshotDir, params, challenge.hashToGroup(input), 1 << depthFor(T));
+        }
+    }
+
+    // Checkpoints only make sense on segment boundaries that are whole numbers of squarings
+    private int depthFor(long T) {
+        int t = (int)(Math.log(T) / Math.log(2)); // log₂(T)
+        return Math.min(checkpointDepth, Math.min(t, Long.numberOfTrailingZeros(T)));
+    }
+
+    private VDFResult computeVDFWithProof(byte[] input, BigInteger x, long T, BooleanSupplier cancelled) {
+        int depth = depthFor(T);
 
-        System.out.println("VDF Engine Final Output (y = x^(2^T)):");
-        System.out.println("x: " + x.toString(16));
-        System.out.println("y: " + y.toString(16));
-        System.out.println("T: " + T);
+        // Step 1: Compute y = x^(2^T) via sequential squaring, keeping x^(2^(k·T/2^depth)) on the way
+        BigInteger[] checkpoints = computeCheckpoints(input, x, T, depth, cancelled);
+        BigInteger y = checkpoints[checkpoints.length - 1];
         
         // Step 2: Generate Pietrzak proof using Fiat-Shamir heuristic
         List<BigInteger> proofElements = new ArrayList<>();
+        List<BigInteger> challenges = new ArrayList<>();
         
         // Initialize for iterative proof generation
         BigInteger xi = x;
         BigInteger yi = y;
         long Ti = T;
         
-        int t = (int)(Math.log(T) / Math.log(2)); // log₂(T)
-        
         // Generate proof elements μᵢ and update (xᵢ, yᵢ) iteratively
-        for (int i = 1; i <= t; i++) {
-            if (Ti <= 1) break;
+        // ⌈log₂(T)⌉ rounds, odd Tᵢ are rounded up
+        for (int i = 1; Ti > 1; i++) {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException("VDF computation cancelled");
+            }
             
             long halfTi = Ti % 2 == 0 ? Ti / 2 : (Ti + 1) / 2; 
             
-            // Compute μᵢ = xᵢ^(2^(T/2^i))
-            BigInteger mu_i = sequentialSquaring(xi, halfTi);
-            System.out.println("VDF Progress: " + (i * 100 / t) + "%");
-
-            if (!isInSignedQuadraticResidues(mu_i)) {  //debugging
-                throw new IllegalStateException(
-                    "Generated invalid μ at step " + i + 
-                    ": Jacobi=" + jacobiSymbol(mu_i, params.getModulus()) +
-                    ", μ=" + mu_i.toString(16).substring(0, 16) + "..."
-                );
+            // Compute μᵢ = xᵢ^(2^(T/2^i)), from the checkpoints while they are fine-grained enough
+            BigInteger mu_i = i <= depth
+                ? muFromCheckpoints(checkpoints, depth, i, challenges)
+                : sequentialSquaring(xi, halfTi, cancelled);
+
+            // Invariant: μᵢ is a power of a square, so it is in QR⁺_N, which verifiers require.
+            // One Jacobi symbol per round is cheap next to the squarings; failing here means
+            // the checkpoint fold is broken, and beats handing out a proof nobody accepts.
+            if (!GroupArithmetic.isInSignedQuadraticResidues(mu_i, params)) {
+                throw new IllegalStateException("Generated μ outside QR⁺_N at step " + i);
             }
 
             proofElements.add(mu_i);
             
             // Generate challenge rᵢ = hash((xᵢ, T/2^(i-1), yᵢ), μᵢ)
-            String challengeInput = xi.toString() + ":" + Ti + ":" + yi.toString() + ":" + mu_i.toString();
-            BigInteger ri = new BigInteger(1, hasher.digest(challengeInput.getBytes()))
-                            .mod(BigInteger.valueOf(2).pow(params.getSecurityParameter()));
-            
-            // Update for next iteration according to equations (9)
-            BigInteger xi_plus_1 = xi.modPow(ri, params.getModulus()).multiply(mu_i).mod(params.getModulus());
-            BigInteger yi_plus_1 = mu_i.modPow(ri, params.getModulus()).multiply(yi).mod(params.getModulus());
+            BigInteger ri = challenge.compute(xi, Ti, yi, mu_i);
+            challenges.add(ri);
+
+            // Odd T (Section 3.1 of the paper): prove x^(2^(T+1)) = y² instead
+            BigInteger yi_target = Ti % 2 != 0 ? yi.multiply(yi).mod(params.getModulus()) : yi;
             
-            // Handle odd T (Section 3.1 of the paper)
-            if (Ti % 2 != 0) {
-                yi_plus_1 = yi_plus_1.multiply(yi_plus_1).mod(params.getModulus());
+            // Update for next iteration according to equations (9), both halves are independent
+            BigInteger xi_plus_1;
+            BigInteger yi_plus_1;
+            if (pool != null) {
+                final BigInteger x_cur = xi;
+                CompletableFuture<BigInteger> nextX = CompletableFuture.supplyAsync(() -> powMul(x_cur, ri, mu_i), pool);
+                yi_plus_1 = powMul(mu_i, ri, yi_target);
+                xi_plus_1 = nextX.join();
+            } else {
+                xi_plus_1 = powMul(xi, ri, mu_i);
+                yi_plus_1 = powMul(mu_i, ri, yi_target);
             }
 
             // Update for next iteration
@@ -107,46 +190,84 @@ public class VDFEngine {
         return new VDFResult(y, proofElements);
     }
 
-    private boolean isInSignedQuadraticResidues(BigInteger x) {
-        if (x.signum() < 0) return false;
-        return jacobiSymbol(x, params.getModulus()) == 1;
-    }
+    private BigInteger[] computeCheckpoints(byte[] input, BigInteger x, long T, int depth, BooleanSupplier cancelled) {
+        // checkpoints[k] = x^(2^(k·T/2^depth)), so checkpoints[0] = x and the last one is y
+        int segments = 1 << depth;
+        long stride = T >> depth;
+
+        BigInteger[] checkpoints = new BigInteger[segments + 1];
+        checkpoints[0] = x;
 
-    private int jacobiSymbol(BigInteger a, BigInteger n) {
-        if (n.compareTo(BigInteger.ONE) <= 0 || n.remainder(BigInteger.valueOf(2)).equals(BigInteger.ZERO)) {
-            throw new IllegalArgumentException("n must be odd and > 1");
+        // One squarer carries the chain, every segment boundary is kept as a checkpoint
+        if (snapshotDir == null || T < Config.VDF_SNAPSHOT_INTERVAL) {
+            squarer.load(x);
+            for (int k = 1; k <= segments; k++) {
+                squarer.squareInPlace(stride, cancelled);
+                checkpoints[k] = squarer.get();
+            }
+            return checkpoints;
         }
-        
-        a = a.remainder(n);
-        int result = 1;
-        
-        while (!a.equals(BigInteger.ZERO)) {
-            while (a.remainder(BigInteger.valueOf(2)).equals(BigInteger.ZERO)) {
-                a = a.divide(BigInteger.valueOf(2));
-                BigInteger nMod8 = n.remainder(BigInteger.valueOf(8));
-                if (nMod8.equals(BigInteger.valueOf(3)) || nMod8.equals(BigInteger.valueOf(5))) {
-                    result = -result;
-                }
+
+        // Cancelled chains keep their snapshot, see discard
+        VDFSnapshot snapshot = VDFSnapshot.open(snapshotDir, params, input, x, segments, squarer.limbs());
+        try (snapshot) {
+            long done = snapshot.resume(squarer, checkpoints);
+            if (done == 0) {
+                squarer.load(x);
             }
-            
-            // Swap a and n
-            BigInteger temp = a;
-            a = n;
-            n = temp;
-            
-            if (a.remainder(BigInteger.valueOf(4)).equals(BigInteger.valueOf(3)) && 
-                n.remainder(BigInteger.valueOf(4)).equals(BigInteger.valueOf(3))) {
-                result = -result;
+            while (done < T) {
+                long next = Math.min((done / stride + 1) * stride, done + Config.VDF_SNAPSHOT_INTERVAL);
+                squarer.squareInPlace(next - done, cancelled);
+                done = next;
+                if (done % stride == 0) {
+                    checkpoints[(int) (done / stride)] = squarer.get();
+                }
+                if (done < T) {
+                    snapshot.save(done, squarer, checkpoints);
+                }
             }
-            
-            a = a.remainder(n);
         }
-        
-        if (n.equals(BigInteger.ONE)) {
-            return result;
-        } else {
-            return 0;
+        snapshot.delete();
+        return checkpoints;
+    }
+
+    private BigInteger muFromCheckpoints(BigInteger[] checkpoints, int depth, int round, List<BigInteger> challenges) {
+        // In round i, xᵢ = Π_k x^(2^(k·Tᵢ))^(w_k) over the 2^(i-1) segments of length Tᵢ = T/2^(i-1),
+        // where w_k is the product of the rⱼ whose halving kept segment k in the left half.
+        // μᵢ uses the same weights on the segment midpoints, so it is a fold of those checkpoints.
+        int segments = 1 << (round - 1);
+        int step = 1 << (depth - round + 1);
+
+        BigInteger[] acc = new BigInteger[segments];
+        for (int k = 0; k < segments; k++) {
+            acc[k] = checkpoints[k * step + step / 2];
+        }
+
+        // Fold pairwise, last challenge first: (a, b) -> a^rⱼ · b
+        for (int j = round - 2; j >= 0; j--) {
+            BigInteger r = challenges.get(j);
+            BigInteger[] prev = acc;
+            BigInteger[] next = new BigInteger[1 << j];
+            forEachIndex(next.length, m -> next[m] = powMul(prev[2 * m], r, prev[2 * m + 1]));
+            acc = next;
+        }
+        return acc[0];
+    }
+
+    // base^exp · factor mod N
+    private BigInteger powMul(BigInteger base, BigInteger exp, BigInteger factor) {
+        return base.modPow(exp, params.getModulus()).multiply(factor).mod(params.getModulus());
+    }
+
+    private void forEachIndex(int count, IntConsumer body) {
+        if (pool == null || count < 2) {
+            for (int i = 0; i < count; i++) {
+                body.accept(i);
+            }
+            return;
         }
+        // A parallel stream started from inside the pool runs on that pool's workers
+        pool.submit(() -> IntStream.range(0, count).parallel().forEach(body)).join();
     }
 
     private static class VDFResult {
@@ -0,0 +1,72 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import pt.tecnico.ulisboa.Config;
+
+// Loads the network's VDF parameters from a JSON file next to the genesis block and keeps one
+// shared instance per file, so every consensus object in the process (and every node reading
+// the same file) uses the same modulus without generating anything at startup.
+public class VDFParameterRegistry {
+    private static final Map<String, VDFParameters> loaded = new ConcurrentHashMap<>();
+
+    public static VDFParameters getDefault() {
+        return load(Config.BLOCK_DIRPATH + "/" + Config.VDF_PARAMS_PATH);
+    }
+
+    public static VDFParameters load(String path) {
+        return loaded.computeIfAbsent(path, VDFParameterRegistry::read);
+    }
+
+    private static VDFParameters read(String path) {
+        try (FileReader reader = new FileReader(path)) {
+            JsonObject rootObj = JsonParser.parseReader(reader).getAsJsonObject();
+
+            String group = rootObj.has("group") ? rootObj.get("group").getAsString() : "rsa";
+            if (!group.equals("rsa")) {
+                throw new IllegalArgumentException("Unsupported VDF group: " + group);
+            }
+
+            String modulusHex = rootObj.get("modulus").getAsString();
+            BigInteger modulus = new BigInteger(modulusHex.startsWith("0x") ? modulusHex.substring(2) : modulusHex, 16);
+            long T = rootObj.get("time_parameter").getAsLong();
+            int securityParameter = rootObj.get("security_parameter").getAsInt();
+
+            return new VDFParameters(modulus, T, securityParameter);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load VDF parameters from " + path, e);
+        }
+    }
+
+    public static void save(VDFParameters params, String path) throws IOException {
+        JsonObject rootObj = new JsonObject();
+        rootObj.addProperty("group", "rsa");
+        rootObj.addProperty("modulus", "0x" + params.getModulus().toString(16));
+        rootObj.addProperty("time_parameter", params.getTimeParameter());
+        rootObj.addProperty("security_parameter", params.getSecurityParameter());
+
+        try (FileWriter writer = new FileWriter(path)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(rootObj, writer);
+        }
+    }
+
+    // Network setup: writes fresh parameters (new 2048-bit RSA modulus, factors discarded)
+    // Usage: VDFParameterRegistry [path] [T] [securityParameter]
+    public static void main(String[] args) throws IOException {
+        String path = args.length > 0 ? args[0] : Config.BLOCK_DIRPATH + "/" + Config.VDF_PARAMS_PATH;
+        long T = args.length > 1 ? Long.parseLong(args[1]) : 1L << 20;
+        int securityParameter = args.length > 2 ? Integer.parseInt(args[2]) : 128;
+
+        save(VDFParameters.generate(2048, T, securityParameter), path);
+        System.out.println("VDF parameters written to " + path);
+    }
+}
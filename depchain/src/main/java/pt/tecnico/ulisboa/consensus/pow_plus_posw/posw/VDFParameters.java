@@ -5,18 +5,58 @@ import java.security.*;
 import java.security.interfaces.RSAPublicKey;
 import java.math.BigInteger;
 
+// Group and delay parameters shared by every prover and verifier of a network. Nodes get them
+// from VDFParameterRegistry so that all of them use the same modulus; constants derived from
+// the modulus are computed once here instead of by every engine.
 public class VDFParameters {
     private final BigInteger modulus;
     private final long T;
     private final int securityParameter;
-    
-    public VDFParameters() {
-        this.T = (long) Math.pow(2,20);
-        this.securityParameter = 128;
-        this.modulus = generateRSAModulus(2048);
+
+    // Derived constants
+    private final BigInteger challengeMask; // 2^λ - 1
+    private final int[] modulusLimbs; // N as little-endian 32-bit limbs, see GroupArithmetic
+
+    public VDFParameters(BigInteger modulus, long T, int securityParameter) {
+        if (modulus == null || modulus.compareTo(BigInteger.ONE) <= 0 || !modulus.testBit(0)) {
+            throw new IllegalArgumentException("VDF modulus must be odd and > 1");
+        }
+        if (T < 1) {
+            throw new IllegalArgumentException("VDF time parameter must be positive");
+        }
+        if (securityParameter < 1 || securityParameter > 256) {
+            throw new IllegalArgumentException("VDF security parameter must be between 1 and 256 bits");
+        }
+        this.modulus = modulus;
+        this.T = T;
+        this.securityParameter = securityParameter;
+        this.challengeMask = BigInteger.ONE.shiftLeft(securityParameter).subtract(BigInteger.ONE);
+        this.modulusLimbs = GroupArithmetic.toLimbs(modulus, (modulus.bitLength() + 31) >>> 5);
+    }
+
+    // Same group with another delay, e.g. the one the chain sets for a block (see TimeParameterAdjustment)
+    public VDFParameters withTimeParameter(long T) {
+        return T == this.T ? this : new VDFParameters(this, T);
     }
 
-    private BigInteger generateRSAModulus(int bitLength) {
+    private VDFParameters(VDFParameters group, long T) {
+        if (T < 1) {
+            throw new IllegalArgumentException("VDF time parameter must be positive");
+        }
+        this.modulus = group.modulus;
+        this.T = T;
+        this.securityParameter = group.securityParameter;
+        this.challengeMask = group.challengeMask;
+        this.modulusLimbs = group.modulusLimbs;
+    }
+
+    // Fresh parameters with a new RSA modulus whose factors are thrown away. Slow (RSA key
+    // generation) and different on every call, so only meant for setting up a network.
+    public static VDFParameters generate(int modulusBits, long T, int securityParameter) {
+        return new VDFParameters(generateRSAModulus(modulusBits), T, securityParameter);
+    }
+
+    private static BigInteger generateRSAModulus(int bitLength) {
         try {
             KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
             keyGen.initialize(bitLength);
@@ -26,11 +66,15 @@ public class VDFParameters {
             throw new RuntimeException("Failed to generate RSA modulus", e);
         }
     }
-    
+
     public BigInteger getModulus() { return modulus; }
     public long getTimeParameter() { return T; }
     public int getSecurityParameter() { return securityParameter; }
 
+    BigInteger getChallengeMask() { return challengeMask; }
+    // Shared, callers must not write to it
+    int[] getModulusLimbs() { return modulusLimbs; }
+
     @Override
     public String toString() {
         return "VDFParameters{" +
@@ -0,0 +1,30 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import java.util.function.BooleanSupplier;
+
+public interface VDFProver {
+    /**
+     * Compute y = H(input)^(2^T) together with a proof of the computation
+     */
+    default SequentialProof computeVDF(byte[] input) {
+        return computeVDF(input, () -> false);
+    }
+
+    /**
+     * Same, polling `cancelled` every Config.VDF_CANCEL_CHECK_INTERVAL squarings or so;
+     * throws CancellationException once it returns true
+     */
+    SequentialProof computeVDF(byte[] input, BooleanSupplier cancelled);
+
+    /**
+     * Drops whatever was kept to resume the proof for input after a restart, once that
+     * proof is not wanted anymore
+     */
+    default void discard(byte[] input) {
+    }
+
+    /**
+     * The proof format this prover produces
+     */
+    ProofScheme getScheme();
+}
@@ -0,0 +1,301 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Progress of one squaring chain in a memory-mapped file, so a restarted node resumes the
+// chain instead of squaring again from x. The file is named after hash(N, T, segments, x).
+// The header also holds T and the VDF input, so a restarted node knows which proofs it left
+// unfinished (see pending) without being asked for them again.
+//
+// Layout: header | slot A | slot B | checkpoints 1..segments (fixed-width big-endian)
+// A slot is (iterations, limbs of the current value, CRC32). Slots are written
+// alternately, so a torn write leaves the previous one intact; checkpoints are flushed before
+// the slot that covers them.
+// Not thread-safe: one snapshot per chain.
+class VDFSnapshot implements AutoCloseable {
+    private static final int MAGIC = 0x56444653; // "VDFS"
+    private static final int VERSION = 3;
+    private static final int KEY_BYTES = 32;
+    // magic, version, key, limbs, element bytes, segments, T, input length; the input follows
+    private static final int FIXED_HEADER_BYTES = 8 + KEY_BYTES + 12 + Long.BYTES + Integer.BYTES;
+    private static final String SUFFIX = ".snap";
+
+    // A chain a previous run left unfinished
+    record Pending(byte[] input, long timeParameter) {
+    }
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int limbs;
+    private final int elementBytes;
+    private final int segments;
+    private final long stride;
+    private final byte[] input;
+    private final int headerBytes;
+    private final int slotBytes;
+    private final int checkpointsOffset;
+    private final int[] state;
+    private final CRC32 crc = new CRC32();
+
+    private int nextSlot;
+    private int checkpointsWritten; // checkpoints 1..checkpointsWritten are in the file
+
+    private VDFSnapshot(Path path, MappedByteBuffer buffer, int limbs, int elementBytes, int segments, long stride,
+            byte[] input) {
+        this.path = path;
+        this.buffer = buffer;
+        this.limbs = limbs;
+        this.elementBytes = elementBytes;
+        this.segments = segments;
+        this.stride = stride;
+        this.input = input;
+        this.headerBytes = FIXED_HEADER_BYTES + input.length;
+        this.slotBytes = Long.BYTES + 4 * limbs + Long.BYTES;
+        this.checkpointsOffset = headerBytes + 2 * slotBytes;
+        this.state = new int[limbs];
+    }
+
+    // x is the group element the input hashes to
+    static VDFSnapshot open(Path directory, VDFParameters params, byte[] input, BigInteger x, int segments, int limbs) {
+        int elementBytes = (params.getModulus().bitLength() + 7) / 8;
+        byte[] key = key(params, x, segments);
+        Path path = path(directory, key);
+        long stride = params.getTimeParameter() / segments;
+
+        int slotBytes = Long.BYTES + 4 * limbs + Long.BYTES;
+        long size = FIXED_HEADER_BYTES + input.length + 2L * slotBytes + (long) (segments + 1) * elementBytes;
+
+        try {
+            Files.createDirectories(directory);
+            boolean existed = Files.exists(path);
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+
+            VDFSnapshot snapshot = new VDFSnapshot(path, buffer, limbs, elementBytes, segments, stride, input);
+            if (!existed || !snapshot.headerMatches(key)) {
+                snapshot.initialize(key, params.getTimeParameter());
+            }
+            return snapshot;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open VDF snapshot " + path, e);
+        }
+    }
+
+    // Restores the newest valid slot into the squarer and the checkpoints it covers, returns
+    // the number of squarings already done (0 when there is nothing to resume)
+    long resume(ChunkedSquarer squarer, BigInteger[] checkpoints) {
+        long a = readSlot(0);
+        long b = readSlot(1);
+        int slot = a >= b ? 0 : 1;
+        long iterations = Math.max(a, b);
+        nextSlot = 1 - slot;
+        if (iterations <= 0) {
+            return 0;
+        }
+
+        int covered = (int) (iterations / stride);
+        for (int k = 1; k <= covered; k++) {
+            byte[] bytes = new byte[elementBytes];
+            buffer.get(checkpointsOffset + k * elementBytes, bytes);
+            checkpoints[k] = new BigInteger(1, bytes);
+        }
+        checkpointsWritten = covered;
+
+        readState(slot);
+        squarer.importState(state);
+        return iterations;
+    }
+
+    void save(long iterations, ChunkedSquarer squarer, BigInteger[] checkpoints) {
+        int covered = (int) (iterations / stride);
+        if (covered > checkpointsWritten) {
+            for (int k = checkpointsWritten + 1; k <= covered; k++) {
+                writeElement(checkpoints[k], checkpointsOffset + k * elementBytes);
+            }
+            checkpointsWritten = covered;
+            buffer.force();
+        }
+
+        squarer.exportState(state);
+        int offset = slotOffset(nextSlot);
+        buffer.putLong(offset, iterations);
+        for (int i = 0; i < limbs; i++) {
+            buffer.putInt(offset + Long.BYTES + 4 * i, state[i]);
+        }
+        buffer.putLong(offset + slotBytes - Long.BYTES, checksum(offset));
+        buffer.force();
+        nextSlot = 1 - nextSlot;
+    }
+
+    // The chain finished: the snapshot is of no further use
+    void delete() {
+        delete(path);
+    }
+
+    // The chain will not be resumed (its block lost the race), whether or not it has a snapshot
+    static void delete(Path directory, VDFParameters params, BigInteger x, int segments) {
+        delete(path(directory, key(params, x, segments)));
+    }
+
+    // The chains left in `directory` by a previous run. Snapshots that are not
+    // readable, from another format, or untouched for more than maxAge ms belong to rounds
+    // that are long over and are deleted.
+    static List<Pending> pending(Path directory, long maxAge) {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> list = Files.list(directory)) {
+                list.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).forEach(files::add);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to list VDF snapshots in " + directory, e);
+            }
+        }
+
+        List<Pending> pending = new ArrayList<>();
+        long oldest = System.currentTimeMillis() - maxAge;
+        for (Path file : files) {
+            Pending chain = readPending(file, oldest);
+            if (chain != null) {
+                pending.add(chain);
+            } else {
+                delete(file);
+            }
+        }
+        return pending;
+    }
+
+    // T and input from a snapshot's header, null if it is stale or not a snapshot
+    private static Pending readPending(Path file, long oldest) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (Files.getLastModifiedTime(file).toMillis() < oldest || channel.size() < FIXED_HEADER_BYTES) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_BYTES);
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                return null;
+            }
+            long T = header.getLong(20 + KEY_BYTES);
+            int length = header.getInt(28 + KEY_BYTES);
+            if (length < 0 || channel.size() < FIXED_HEADER_BYTES + (long) length) {
+                return null;
+            }
+            ByteBuffer input = ByteBuffer.allocate(length);
+            channel.read(input, FIXED_HEADER_BYTES);
+            return new Pending(input.array(), T);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to delete VDF snapshot " + path, e);
+        }
+    }
+
+    private static Path path(Path directory, byte[] key) {
+        return directory.resolve(HexFormat.of().formatHex(key) + SUFFIX);
+    }
+
+    @Override
+    public void close() {
+        buffer.force();
+    }
+
+    private boolean headerMatches(byte[] key) {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            return false;
+        }
+        byte[] stored = new byte[KEY_BYTES];
+        buffer.get(8, stored);
+        return MessageDigest.isEqual(stored, key)
+                && buffer.getInt(8 + KEY_BYTES) == limbs
+                && buffer.getInt(12 + KEY_BYTES) == elementBytes
+                && buffer.getInt(16 + KEY_BYTES) == segments
+                && buffer.getInt(28 + KEY_BYTES) == input.length;
+    }
+
+    private void initialize(byte[] key, long T) {
+        for (int i = 0; i < checkpointsOffset; i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.put(8, key);
+        buffer.putInt(8 + KEY_BYTES, limbs);
+        buffer.putInt(12 + KEY_BYTES, elementBytes);
+        buffer.putInt(16 + KEY_BYTES, segments);
+        buffer.putLong(20 + KEY_BYTES, T);
+        buffer.putInt(28 + KEY_BYTES, input.length);
+        buffer.put(FIXED_HEADER_BYTES, input);
+        buffer.force();
+    }
+
+    // Iterations recorded in a slot, or -1 if the slot is empty or torn
+    private long readSlot(int slot) {
+        int offset = slotOffset(slot);
+        long iterations = buffer.getLong(offset);
+        if (iterations <= 0 || iterations > stride * segments) {
+            return -1;
+        }
+        return buffer.getLong(offset + slotBytes - Long.BYTES) == checksum(offset) ? iterations : -1;
+    }
+
+    private void readState(int slot) {
+        int offset = slotOffset(slot);
+        for (int i = 0; i < limbs; i++) {
+            state[i] = buffer.getInt(offset + Long.BYTES + 4 * i);
+        }
+    }
+
+    private long checksum(int slotOffset) {
+        crc.reset();
+        crc.update(buffer.slice(slotOffset, slotBytes - Long.BYTES));
+        return crc.getValue();
+    }
+
+    private int slotOffset(int slot) {
+        return headerBytes + slot * slotBytes;
+    }
+
+    private void writeElement(BigInteger value, int offset) {
+        byte[] bytes = value.toByteArray();
+        int copy = Math.min(bytes.length, elementBytes);
+        int pad = elementBytes - copy;
+        for (int i = 0; i < pad; i++) {
+            buffer.put(offset + i, (byte) 0);
+        }
+        buffer.put(offset + pad, bytes, bytes.length - copy, copy);
+    }
+
+    private static byte[] key(VDFParameters params, BigInteger x, int segments) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(params.getModulus().toByteArray());
+            digest.update(ByteBuffer.allocate(Long.BYTES + Integer.BYTES)
+                    .putLong(params.getTimeParameter()).putInt(segments).array());
+            digest.update(x.toByteArray());
+            return digest.digest();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to initialize hasher", e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+public interface VDFVerifier {
+    /**
+     * Check that proof shows its output is H(input)^(2^T)
+     */
+    boolean verifyVDFProof(byte[] input, SequentialProof proof);
+
+    /**
+     * Verify many (input, proof) pairs, results[i] is what verifyVDFProof returns for the i-th
+     * pair. Each proof is checked on its own, spread over the common pool: folding them into
+     * one randomized aggregate does not pay off with BigInteger, whose modPow runs on Montgomery
+     * intrinsics that multiply-and-reduce in Java cannot match. Implementations must be safe to
+     * call from several threads.
+     */
+    default boolean[] verifyAll(List<Map.Entry<byte[], SequentialProof>> proofs) {
+        boolean[] results = new boolean[proofs.size()];
+        IntStream.range(0, proofs.size()).parallel().forEach(i -> {
+            Map.Entry<byte[], SequentialProof> entry = proofs.get(i);
+            results[i] = verifyVDFProof(entry.getKey(), entry.getValue());
+        });
+        return results;
+    }
+}
@@ -0,0 +1,89 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+import pt.tecnico.ulisboa.Config;
+
+// Wesolowski VDF: y = x^(2^T) and π = x^⌊2^T/ℓ⌋, where ℓ is a prime derived from (x, T, y).
+// The proof is one group element, against log₂(T) elements for Pietrzak.
+// x is the square of the hashed input, so that y and π are in QR⁺_N like Pietrzak's μᵢ and
+// the verifier can reject anything outside it.
+public class WesolowskiEngine implements VDFProver {
+    private static final int MAX_SEGMENTS = 1024;
+    private static final BigInteger TWO = BigInteger.valueOf(2);
+
+    private final VDFParameters params;
+    private final FiatShamirChallenge challenge;
+    private final ChunkedSquarer squarer;
+
+    public WesolowskiEngine(VDFParameters params) {
+        if (params.getTimeParameter() < 1) {
+            throw new IllegalArgumentException("VDF time parameter must be positive");
+        }
+        this.params = params;
+        this.challenge = new FiatShamirChallenge(params);
+        this.squarer = new ChunkedSquarer(params);
+    }
+
+    @Override
+    public SequentialProof computeVDF(byte[] input, BooleanSupplier cancelled) {
+        BigInteger x = challenge.hashToSquare(input);
+        long T = params.getTimeParameter();
+
+        // y = x^(2^T), keeping x^(2^(j·s)) every s squarings for the proof
+        int stride = Math.toIntExact(Math.max(Config.VDF_CANCEL_CHECK_INTERVAL, (T + MAX_SEGMENTS - 1) / MAX_SEGMENTS));
+        int segments = (int) ((T + stride - 1) / stride);
+        BigInteger[] checkpoints = new BigInteger[segments];
+        checkpoints[0] = x;
+
+        squarer.load(x);
+        long done = 0;
+        for (int j = 1; j <= segments; j++) {
+            long step = Math.min(stride, T - done);
+            squarer.squareInPlace(step, cancelled);
+            done += step;
+            if (j < segments) {
+                checkpoints[j] = squarer.get();
+            }
+        }
+        BigInteger y = squarer.get();
+
+        // π = x^q with q = ⌊2^T/ℓ⌋ = Σ_j c_j·2^(j·s), so π = Π_j (x^(2^(j·s)))^(c_j): the same
+        // T bits of exponentiation as x.modPow(q), in pieces that can be abandoned in between.
+        // q itself is T bits long, so each s-bit chunk is derived on its own (see chunk)
+        BigInteger N = params.getModulus();
+        BigInteger l = challenge.computePrime(x, T, y);
+
+        BigInteger pi = BigInteger.ONE;
+        for (int j = 0; j < segments; j++) {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException("VDF computation cancelled");
+            }
+            BigInteger c = chunk(T, l, j, stride);
+            if (c.signum() != 0) {
+                pi = pi.multiply(checkpoints[j].modPow(c, N)).mod(N);
+            }
+        }
+
+        return new SequentialProof(y, List.of(pi), T, ProofScheme.WESOLOWSKI);
+    }
+
+    // Bits [j·s, (j+1)·s) of ⌊2^T/ℓ⌋. With r = 2^(T-(j+1)·s) mod ℓ they are ⌊r·2^s/ℓ⌋, as
+    // ⌊2^(T-j·s)/ℓ⌋ = 2^s·⌊2^(T-(j+1)·s)/ℓ⌋ + ⌊r·2^s/ℓ⌋; the top chunk is ⌊2^(T-j·s)/ℓ⌋ itself
+    private static BigInteger chunk(long T, BigInteger l, int j, int s) {
+        long low = (long) j * s;
+        if (low + s > T) {
+            return BigInteger.ONE.shiftLeft((int) (T - low)).divide(l);
+        }
+        BigInteger r = TWO.modPow(BigInteger.valueOf(T - low - s), l);
+        return r.shiftLeft(s).divide(l);
+    }
+
+    @Override
+    public ProofScheme getScheme() {
+        return ProofScheme.WESOLOWSKI;
+    }
+}
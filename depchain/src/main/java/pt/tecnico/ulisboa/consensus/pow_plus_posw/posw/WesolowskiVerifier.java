@@ -0,0 +1,48 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import java.math.BigInteger;
+
+import pt.tecnico.ulisboa.utils.types.Logger;
+
+public class WesolowskiVerifier implements VDFVerifier {
+    private static final BigInteger TWO = BigInteger.valueOf(2);
+
+    private final VDFParameters params;
+    // One digest and encoding buffer per thread, so verifyAll can run concurrently
+    private final ThreadLocal<FiatShamirChallenge> challenge;
+
+    public WesolowskiVerifier(VDFParameters params) {
+        this.params = params;
+        this.challenge = ThreadLocal.withInitial(() -> new FiatShamirChallenge(params));
+    }
+
+    @Override
+    public boolean verifyVDFProof(byte[] input, SequentialProof proof) {
+        try {
+            if (proof.getScheme() != ProofScheme.WESOLOWSKI || proof.getProofElements().size() != 1) {
+                return false;
+            }
+
+            BigInteger N = params.getModulus();
+            BigInteger x = challenge.get().hashToSquare(input);
+            BigInteger y = proof.getOutput();
+            BigInteger pi = proof.getProofElements().get(0);
+            long T = proof.getTimeParameter();
+            // Both are powers of a square: in QR⁺_N, and reduced so each has one encoding
+            if (T < 1 || !GroupArithmetic.isInSignedQuadraticResidues(y, params)
+                    || !GroupArithmetic.isInSignedQuadraticResidues(pi, params)) {
+                return false;
+            }
+
+            // π^ℓ · x^r = y with r = 2^T mod ℓ, since 2^T = ℓ·⌊2^T/ℓ⌋ + r
+            BigInteger l = challenge.get().computePrime(x, T, y);
+            BigInteger r = TWO.modPow(BigInteger.valueOf(T), l);
+            BigInteger lhs = pi.modPow(l, N).multiply(x.modPow(r, N)).mod(N);
+            return lhs.equals(y);
+
+        } catch (Exception e) {
+            Logger.LOG("VDF proof verification failed: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -1,63 +1,142 @@
 package pt.tecnico.ulisboa.consensus.pow_plus_posw.pow;
 
+import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.List;
 
+import pt.tecnico.ulisboa.Config;
 import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
+import pt.tecnico.ulisboa.blockchain.blocks.PoWTarget;
+import pt.tecnico.ulisboa.utils.types.PersistentArray;
 
-public class DifficultyAdjustment {
-    public static final int DIFFICULTY_ADJUSTMENT_INTERVAL = 2016; // blocks
-    private static final int TARGET_BLOCK_TIME = 600; // 10 minutes in seconds
-    private static final double MAX_ADJUSTMENT_FACTOR = 4.0;
-    private static final double MIN_ADJUSTMENT_FACTOR = 0.25;
-    
-    public Integer calculateNewDifficulty(List<HybridBlock> recentBlocks, 
-                                        Integer currentDifficulty) {
-        
-        if (recentBlocks.size() < DIFFICULTY_ADJUSTMENT_INTERVAL) {
-            return currentDifficulty; // Not enough blocks for adjustment
+// Per-block LWMA retargeting (linearly weighted moving average of solve times).
+// The last `window` solve times and targets sit in ring buffers. The weighted sum
+// W = sum(i * solveTime_i), i = 1 (oldest) .. n, slides as W' = W - S + n * newest, where
+// S is the plain sum. So every block costs O(1) regardless of the window size.
+// next target = average target * W / (n(n+1)/2 * targetBlockTime)
+// Immutable: next(block) shares the ring buffers with this state (see PersistentArray), so
+// each block of a fork can keep the state its children need without copying the window.
+public final class DifficultyAdjustment {
+    // A solve time is clamped to [-6T, 6T], so one bad timestamp cannot swing the target
+    private static final long MAX_SOLVE_TIME_FACTOR = 6;
+    // The weighted average never drops below T/10
+    private static final long MIN_WEIGHTED_DIVISOR = 10;
+
+    private final long targetBlockTime; // ms
+    private final int window;
+
+    private final PersistentArray<Long> solveTimes;
+    private final PersistentArray<BigInteger> targets;
+    private final int head; // oldest entry once the window is full
+    private final int count;
+
+    private final long weightedSolveTimes;
+    private final long sumSolveTimes;
+    private final BigInteger sumTargets;
+
+    private final long lastTimestamp;
+    private final int nextDifficulty;
+    // Timestamps of the last Config.MEDIAN_TIME_SPAN blocks, for the median time past
+    private final PersistentArray<Long> recentTimestamps;
+    private final int timestampCount;
+    private final long medianTimePast;
+
+    public DifficultyAdjustment(long targetBlockTime, int window, int initialDifficulty) {
+        if (targetBlockTime <= 0 || window < 1) {
+            throw new IllegalArgumentException("Target block time and window must be positive");
         }
-        
-        // Get the last DIFFICULTY_ADJUSTMENT_INTERVAL blocks
-        List<HybridBlock> adjustmentBlocks = recentBlocks.subList(
-            recentBlocks.size() - DIFFICULTY_ADJUSTMENT_INTERVAL, 
-            recentBlocks.size()
-        );
-        
-        long firstBlockTime = adjustmentBlocks.get(0).getTimestamp();
-        long lastBlockTime = adjustmentBlocks.get(adjustmentBlocks.size() - 1).getTimestamp();
-        
-        long actualTimespan = lastBlockTime - firstBlockTime;
-        long targetTimespan = TARGET_BLOCK_TIME * DIFFICULTY_ADJUSTMENT_INTERVAL;
-        
-        // Calculate adjustment factor
-        double adjustmentFactor = (double) targetTimespan / actualTimespan;
-        
-        // Apply bounds to prevent extreme changes
-        adjustmentFactor = Math.max(MIN_ADJUSTMENT_FACTOR, 
-                        Math.min(MAX_ADJUSTMENT_FACTOR, adjustmentFactor));
-        
-        // Calculate new difficulty (number of leading zeros)
-        int newDifficulty;
-        
-        if (adjustmentFactor > 1.0) {
-            // Blocks are being mined too slowly, increase difficulty (more zeros)
-            newDifficulty = currentDifficulty + 1;
-        } else if (adjustmentFactor < 1.0) {
-            // Blocks are being mined too fast, decrease difficulty (fewer zeros)
-            newDifficulty = Math.max(1, currentDifficulty - 1);
+        this.targetBlockTime = targetBlockTime;
+        this.window = window;
+        this.solveTimes = new PersistentArray<>(window);
+        this.targets = new PersistentArray<>(window);
+        this.head = 0;
+        this.count = 0;
+        this.weightedSolveTimes = 0;
+        this.sumSolveTimes = 0;
+        this.sumTargets = BigInteger.ZERO;
+        this.lastTimestamp = -1;
+        this.nextDifficulty = initialDifficulty;
+        this.recentTimestamps = new PersistentArray<>(Config.MEDIAN_TIME_SPAN);
+        this.timestampCount = 0;
+        this.medianTimePast = Long.MIN_VALUE;
+    }
+
+    private DifficultyAdjustment(DifficultyAdjustment parent, HybridBlock block) {
+        this.targetBlockTime = parent.targetBlockTime;
+        this.window = parent.window;
+
+        long timestamp = block.getTimestamp();
+        if (parent.lastTimestamp < 0) {
+            this.solveTimes = parent.solveTimes;
+            this.targets = parent.targets;
+            this.head = parent.head;
+            this.count = parent.count;
+            this.weightedSolveTimes = parent.weightedSolveTimes;
+            this.sumSolveTimes = parent.sumSolveTimes;
+            this.sumTargets = parent.sumTargets;
+            this.nextDifficulty = parent.nextDifficulty;
         } else {
-            // Keep current difficulty
-            newDifficulty = currentDifficulty;
+            long solveTime = Math.max(-MAX_SOLVE_TIME_FACTOR * targetBlockTime,
+                    Math.min(MAX_SOLVE_TIME_FACTOR * targetBlockTime, timestamp - parent.lastTimestamp));
+            BigInteger target = PoWTarget.fromCompact(block.getDifficulty());
+            if (parent.count < window) {
+                this.count = parent.count + 1;
+                this.head = parent.head;
+                this.weightedSolveTimes = parent.weightedSolveTimes + count * solveTime;
+                this.sumSolveTimes = parent.sumSolveTimes + solveTime;
+                this.sumTargets = parent.sumTargets.add(target);
+                int tail = (head + count - 1) % window;
+                this.solveTimes = parent.solveTimes.set(tail, solveTime);
+                this.targets = parent.targets.set(tail, target);
+            } else {
+                // Every entry moves one weight down, the oldest (weight 1) drops out
+                int oldest = parent.head;
+                this.count = window;
+                this.head = (oldest + 1) % window;
+                this.weightedSolveTimes = parent.weightedSolveTimes + window * solveTime - parent.sumSolveTimes;
+                this.sumSolveTimes = parent.sumSolveTimes + solveTime - parent.solveTimes.get(oldest);
+                this.sumTargets = parent.sumTargets.add(target).subtract(parent.targets.get(oldest));
+                this.solveTimes = parent.solveTimes.set(oldest, solveTime);
+                this.targets = parent.targets.set(oldest, target);
+            }
+
+            long weights = (long) count * (count + 1) / 2;
+            long weighted = Math.max(weightedSolveTimes, weights * targetBlockTime / MIN_WEIGHTED_DIVISOR);
+            BigInteger next = sumTargets
+                    .multiply(BigInteger.valueOf(weighted))
+                    .divide(BigInteger.valueOf(count * weights * targetBlockTime));
+            this.nextDifficulty = PoWTarget.toCompact(next.max(BigInteger.ONE).min(PoWTarget.MAX));
         }
-        
-        // Ensure minimum difficulty of 1 (at least 1 leading zero)
-        newDifficulty = Math.max(1, newDifficulty);
-        
-        System.out.println("Difficulty adjusted from " + currentDifficulty + 
-                        " to " + newDifficulty + " leading zeros" +
-                        " (factor: " + adjustmentFactor + ")");
-        
-        return newDifficulty;
+        this.lastTimestamp = timestamp;
+        this.recentTimestamps = parent.recentTimestamps.set(parent.timestampCount % Config.MEDIAN_TIME_SPAN, timestamp);
+        this.timestampCount = parent.timestampCount + 1;
+        this.medianTimePast = median(recentTimestamps.prefix(Math.min(timestampCount, Config.MEDIAN_TIME_SPAN)));
     }
 
+    private static long median(List<Long> timestamps) {
+        long[] sorted = timestamps.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    // The state after `block`, appended to the chain this state belongs to
+    public DifficultyAdjustment next(HybridBlock block) {
+        return new DifficultyAdjustment(this, block);
+    }
+
+    // Difficulty (compact target) of the block after the last one fed in
+    public int getNextDifficulty() {
+        return nextDifficulty;
+    }
+
+    // Median timestamp of the last Config.MEDIAN_TIME_SPAN blocks fed in, Long.MIN_VALUE before
+    // the first. The next block's timestamp must be above it, so a single miner's clock can
+    // neither drag the chain's time back nor be rejected for a small skew.
+    public long getMedianTimePast() {
+        return medianTimePast;
+    }
+
+    public long getTargetBlockTime() {
+        return targetBlockTime;
+    }
 }
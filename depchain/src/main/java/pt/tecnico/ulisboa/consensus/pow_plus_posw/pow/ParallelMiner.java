@@ -0,0 +1,140 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.pow;
+
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
+import pt.tecnico.ulisboa.blockchain.blocks.PoWHeader;
+import pt.tecnico.ulisboa.blockchain.blocks.PoWTarget;
+
+// Nonce search over a fixed set of worker threads. Worker w tries nonces w, w + k, w + 2k, ...
+// (k workers), so the space is covered without overlap. The first worker to find a hash
+// below the target stops the others.
+public class ParallelMiner implements AutoCloseable {
+    private final int threads;
+    private final ExecutorService executor;
+
+    public ParallelMiner(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Miner needs at least one thread");
+        }
+        this.threads = threads;
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "pow-miner");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static final class Result {
+        private final long nonce;
+        private final String hash;
+        private final long attempts;
+        private final long elapsedNanos;
+
+        private Result(long nonce, String hash, long attempts, long elapsedNanos) {
+            this.nonce = nonce;
+            this.hash = hash;
+            this.attempts = attempts;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getNonce() { return nonce; }
+        public String getHash() { return hash; }
+        public long getAttempts() { return attempts; }
+        public long getElapsedNanos() { return elapsedNanos; }
+
+        // Hashes per second over all workers
+        public double getHashRate() {
+            return elapsedNanos == 0 ? 0 : attempts * 1e9 / elapsedNanos;
+        }
+    }
+
+    private static final class Solution {
+        final long nonce;
+        final String hash;
+
+        Solution(long nonce, String hash) {
+            this.nonce = nonce;
+            this.hash = hash;
+        }
+    }
+
+    // Stops the workers without a solution
+    private static final Solution ABORTED = new Solution(-1, null);
+    // Attempts between cancellation checks, so the check stays off the hot path
+    private static final long CANCEL_CHECK_MASK = (1L << 12) - 1;
+
+    public Result search(HybridBlock block) {
+        return search(block, () -> false);
+    }
+
+    // Searches from the block's current nonce; the block itself is not modified.
+    // Throws CancellationException once `cancelled` turns true.
+    public Result search(HybridBlock block, BooleanSupplier cancelled) {
+        byte[] target = PoWTarget.expand(block.getDifficulty());
+        long start = block.getNonce();
+
+        AtomicReference<Solution> solution = new AtomicReference<>();
+        LongAdder attempts = new LongAdder();
+        long startTime = System.nanoTime();
+
+        List<Future<?>> workers = new ArrayList<>(threads);
+        for (int w = 0; w < threads; w++) {
+            long first = start + w;
+            workers.add(executor.submit(() -> {
+                // Each worker hashes from its own copy of the header midstate; only the
+                // winning hash is hex-encoded
+                PoWHeader header = block.newPOWHeader();
+                long tried = 0;
+                for (long nonce = first; solution.get() == null; nonce += threads) {
+                    byte[] hash = header.hash(nonce);
+                    tried++;
+                    if (PoWTarget.meets(hash, target)) {
+                        solution.compareAndSet(null, new Solution(nonce, HexFormat.of().formatHex(hash)));
+                    } else if ((tried & CANCEL_CHECK_MASK) == 0 && cancelled.getAsBoolean()) {
+                        solution.compareAndSet(null, ABORTED);
+                    }
+                }
+                attempts.add(tried);
+            }));
+        }
+
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            solution.compareAndSet(null, ABORTED);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Mining interrupted", e);
+        } catch (ExecutionException e) {
+            solution.compareAndSet(null, ABORTED);
+            throw new RuntimeException("Mining failed", e.getCause());
+        }
+
+        Solution found = solution.get();
+        if (found == ABORTED) {
+            throw new CancellationException("Mining cancelled");
+        }
+        return new Result(found.nonce, found.hash, attempts.sum(), System.nanoTime() - startTime);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
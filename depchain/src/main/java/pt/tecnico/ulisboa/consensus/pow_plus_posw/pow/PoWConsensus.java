@@ -1,35 +1,61 @@
 package pt.tecnico.ulisboa.consensus.pow_plus_posw.pow;
 
 import java.util.List;
-import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
 
+import pt.tecnico.ulisboa.Config;
 import pt.tecnico.ulisboa.blockchain.blocks.Block;
 import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
+import pt.tecnico.ulisboa.blockchain.blocks.PoWTarget;
 import pt.tecnico.ulisboa.consensus.ConsensusInterface;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.metrics.ConsensusMetrics;
 import pt.tecnico.ulisboa.protocol.ClientReq;
 public class PoWConsensus implements ConsensusInterface {
-    private final DifficultyAdjustment difficultyAdjuster;
+    private final int initialDifficulty;
     private final PoWValidator validator;
-    private TreeMap<Integer, Integer> currentDifficulty = new TreeMap<>();
+    private final ParallelMiner miner;
+    private volatile double lastHashRate = 0;
     
     public PoWConsensus() {
-        this.difficultyAdjuster = new DifficultyAdjustment();
+        this(Config.POW_MINER_THREADS);
+    }
+
+    public PoWConsensus(int minerThreads) {
+        this(minerThreads, PoWTarget.fromLeadingZeros(2));
+    }
+
+    // initialDifficulty is a compact target, that of a chain's first blocks (see
+    // newDifficultyAdjustment)
+    public PoWConsensus(int minerThreads, int initialDifficulty) {
+        this.miner = new ParallelMiner(minerThreads);
+        this.initialDifficulty = initialDifficulty;
         this.validator = new PoWValidator();
-        // Initialize difficulty for the first block
-        currentDifficulty.put(0, Integer.valueOf(2));
     }
     
+    // The difficulty comes from the block's ancestry, which PoWConsensus does not track
     @Override
     public boolean validateBlock(Block block) {
-        if (block == null || !(block instanceof HybridBlock)) {
-            throw new IllegalArgumentException("Block must be a valid HybridBlock");
-        }
-        HybridBlock hybridBlock = (HybridBlock) block;
+        throw new UnsupportedOperationException("PoWConsensus needs the difficulty and median time past of the block's parent. Use HybridConsensus instead.");
+    }
 
-        return validator.validatePoWProof(hybridBlock, currentDifficulty.floorEntry(block.getHeight()).getValue());
+    // With the difficulty and median time past that the block's ancestry requires
+    public boolean validateBlock(HybridBlock block, int difficulty, long medianTimePast) {
+        long start = System.nanoTime();
+        boolean valid = validator.validatePoWProof(block, difficulty, medianTimePast);
+        ConsensusMetrics.recordPoWValidation(System.nanoTime() - start);
+        return valid;
     }
     
-    public HybridBlock mineBlock(Block _previousBlock, List<ClientReq> transactions) {
+    // The difficulty comes from the previous block's ancestry, which PoWConsensus does not track
+    @Override
+    public HybridBlock mineBlock(Block previousBlock, List<ClientReq> transactions) {
+        throw new UnsupportedOperationException("PoWConsensus needs the difficulty the previous block's ancestry sets. Use HybridConsensus instead.");
+    }
+
+    // Mines at `difficulty`, the compact target the previous block's ancestry requires.
+    // Throws CancellationException once `cancelled` turns true.
+    public HybridBlock mineBlock(Block _previousBlock, List<ClientReq> transactions, int difficulty,
+            BooleanSupplier cancelled) {
         if (_previousBlock == null || !(_previousBlock instanceof HybridBlock)) {
             throw new IllegalArgumentException("Previous block must be a valid HybridBlock");
         }
@@ -37,33 +63,24 @@ public class PoWConsensus implements ConsensusInterface {
         HybridBlock previousBlock = (HybridBlock) _previousBlock;
 
         HybridBlock block = new HybridBlock(
-            previousBlock.getHash(), 
+            previousBlock.getLinkHash(), 
             previousBlock.getHeight() + 1, 
             transactions, 
-            currentDifficulty.lastEntry().getValue()
+            difficulty
         );
 
         // We chose to start with a nonce of 0 but it's not mandatory
         block.setNonce(0);
         
-        // we could do this in parallel (real world mining) but for academic purposes,
-        // we will do it sequentially because we're not focusing in exploring POW mining algorithms
-        while (!meetsDifficulty(block)) {
-            // Add periodic progress reporting
-            if (block.getNonce() % 100000 == 0) {
-                System.out.println("Mining progress: " + block.getNonce() + " attempts");
-            }
-            // We're incrementing the nonce until we find a valid hash, but other strategies could be used
-            block.setNonce(block.getNonce() + 1);    
-        }
+        // The nonce space is split between the miner threads, the first solution wins
+        ParallelMiner.Result result = miner.search(block, cancelled);
+        lastHashRate = result.getHashRate();
 
-        // Recompute hash with new nonce
-        String newHash = block.computeBlockHash(true);
-        block.setPOWHash(newHash);
-        block.setHash(newHash);
+        block.setNonce(result.getNonce());
+        block.setPOWHash(result.getHash());
+        block.setHash(result.getHash());
         
-        System.out.println("Block mined! Hash: " + block.getHash() + 
-                         ", Nonce: " + block.getNonce());
+        ConsensusMetrics.recordMining(result.getAttempts(), result.getElapsedNanos());
         return block;
     }
     
@@ -72,28 +89,13 @@ public class PoWConsensus implements ConsensusInterface {
         throw new UnsupportedOperationException("PoWConsensus does not support finalizing blocks directly. Use for mining instead.");
     }
 
-    public void adjustDifficulty(List<HybridBlock> recentBlocks) {
-        Integer new_difficulty = difficultyAdjuster.calculateNewDifficulty(
-            recentBlocks, getCurrentDifficulty());
-
-        currentDifficulty.put(recentBlocks.get(recentBlocks.size() - 1).getHeight(), new_difficulty);
+    // Retargeting state of a chain without blocks yet
+    public DifficultyAdjustment newDifficultyAdjustment() {
+        return new DifficultyAdjustment(Config.POW_TARGET_BLOCK_TIME, Config.POW_RETARGET_WINDOW, initialDifficulty);
     }
     
-    public Integer getCurrentDifficulty() {
-        return currentDifficulty.lastEntry().getValue();
+    // Aggregate hash rate of the last mineBlock, over all miner threads
+    public double getLastHashRate() {
+        return lastHashRate;
     }
-
-    private boolean meetsDifficulty(HybridBlock block) {
-        Integer difficulty = currentDifficulty.floorEntry(block.getHeight()).getValue();
-        
-        String hash = block.computeBlockHash(true);
-        String requiredZeros = "0".repeat(difficulty); // difficulty as int (number of zeros)
-
-        // System.out.println("Checking if block meets difficulty:\n" + 
-        //                    "Hash: " + hash + ",\nRequired Zeros: " + requiredZeros);
-
-        return hash.startsWith(requiredZeros);
-    }
-
-
 }
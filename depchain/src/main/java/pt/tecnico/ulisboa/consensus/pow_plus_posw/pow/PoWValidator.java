@@ -1,21 +1,36 @@
 package pt.tecnico.ulisboa.consensus.pow_plus_posw.pow;
 
+import pt.tecnico.ulisboa.Config;
 import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
+import pt.tecnico.ulisboa.blockchain.blocks.PoWTarget;
+import pt.tecnico.ulisboa.utils.types.Logger;
 
 public class PoWValidator {
     
-    public boolean validatePoWProof(HybridBlock block, Integer difficulty) {
+    // `difficulty` and `medianTimePast` are what the block's ancestry requires (see
+    // DifficultyAdjustment)
+    public boolean validatePoWProof(HybridBlock block, Integer difficulty, long medianTimePast) {
         // Recalculate block hash
         String calculatedHash = block.computeBlockHash(true);
         
         // Check if calculated hash matches stored hash
         if (!calculatedHash.equals(block.getPOWHash())) {
-            System.out.println("Invalid PoW: Hash mismatch");
+            Logger.LOG("Invalid PoW: Hash mismatch");
             return false;
         }
         
-        if (block.getDifficulty().compareTo(difficulty) < 0) {
-            System.out.println("Invalid PoW: Block difficulty is lower than expected");
+        // The timestamp is in the PoW header, so it cannot be changed after mining
+        if (block.getTimestamp() <= medianTimePast) {
+            Logger.LOG("Invalid PoW: Timestamp is not after the median time past");
+            return false;
+        }
+        if (block.getTimestamp() > System.currentTimeMillis() + Config.MAX_BLOCK_TIME_DRIFT) {
+            Logger.LOG("Invalid PoW: Timestamp is too far in the future");
+            return false;
+        }
+
+        if (!PoWTarget.isAtLeastAsHard(block.getDifficulty(), difficulty)) {
+            Logger.LOG("Invalid PoW: Block difficulty is lower than expected");
             return false; // Block difficulty is lower than expected
         }
         
@@ -22,6 +22,13 @@ public class BalanceOfDepCoinReq extends ClientReq {
 
     public void setAddress(String ofAddr) {
         this.ofAddr = ofAddr;
+        contentChanged();
+    }
+
+    @Override
+    void encodeFields(CanonicalEncoder out) {
+        super.encodeFields(out);
+        out.writeString(ofAddr);
     }
 
     @Override
@@ -0,0 +1,72 @@
+package pt.tecnico.ulisboa.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+// Canonical binary form of a ClientReq, what gets signed and hashed (see ClientReq.getEncoding).
+// Big-endian fixed-width integers; strings (UTF-8), BigIntegers (two's complement) and arrays
+// carry a 4-byte length, -1 for null, so no two field sequences encode the same way.
+final class CanonicalEncoder {
+    private static final int NULL = -1;
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+    private final DataOutputStream out = new DataOutputStream(bytes);
+
+    CanonicalEncoder writeInt(int value) {
+        try {
+            out.writeInt(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // not thrown by a ByteArrayOutputStream
+        }
+        return this;
+    }
+
+    // Nullable: a presence byte, then the value
+    CanonicalEncoder writeLong(Long value) {
+        try {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeLong(value);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    CanonicalEncoder writeBytes(byte[] value) {
+        if (value == null) {
+            return writeInt(NULL);
+        }
+        writeInt(value.length);
+        bytes.writeBytes(value);
+        return this;
+    }
+
+    CanonicalEncoder writeString(String value) {
+        return writeBytes(value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    CanonicalEncoder writeBigInteger(BigInteger value) {
+        return writeBytes(value != null ? value.toByteArray() : null);
+    }
+
+    CanonicalEncoder writeStrings(String[] values) {
+        if (values == null) {
+            return writeInt(NULL);
+        }
+        writeInt(values.length);
+        for (String value : values) {
+            writeString(value);
+        }
+        return this;
+    }
+
+    byte[] toByteArray() {
+        return bytes.toByteArray();
+    }
+}
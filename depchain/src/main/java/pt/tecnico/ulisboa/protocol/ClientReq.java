@@ -5,6 +5,7 @@ import java.security.PublicKey;
 
 import com.google.gson.JsonObject;
 
+import pt.tecnico.ulisboa.blockchain.blocks.MerkleTree;
 import pt.tecnico.ulisboa.utils.CryptoUtils;
 
 public abstract class ClientReq extends BlockchainMessage {
@@ -13,6 +14,9 @@ public abstract class ClientReq extends BlockchainMessage {
     protected int senderId;
     protected String signature;
     protected ClientReqType reqType;
+    // Both computed once, see contentChanged
+    private transient byte[] encoding;
+    private transient byte[] leafHash; // Merkle leaf hash, see MerkleTree
 
     public ClientReq() {
         // To build from json
@@ -39,12 +43,48 @@ public abstract class ClientReq extends BlockchainMessage {
         this.signature = signature;
     }
 
+    // Canonical binary form of everything but the signature, which is what is signed and
+    // hashed. Shared, must not be modified.
+    public byte[] getEncoding() {
+        byte[] bytes = encoding;
+        if (bytes == null) {
+            CanonicalEncoder out = new CanonicalEncoder();
+            encodeFields(out);
+            bytes = out.toByteArray();
+            encoding = bytes;
+        }
+        return bytes;
+    }
+
+    // Subclasses append their own fields after these
+    void encodeFields(CanonicalEncoder out) {
+        out.writeString(getReqType().name())
+                .writeInt(senderId)
+                .writeLong(count);
+    }
+
+    // Shared, must not be modified
+    public byte[] getLeafHash() {
+        byte[] hash = leafHash;
+        if (hash == null) {
+            hash = MerkleTree.hashLeaf(getEncoding());
+            leafHash = hash;
+        }
+        return hash;
+    }
+
+    // Setters that change what the request says must call this
+    protected final void contentChanged() {
+        encoding = null;
+        leafHash = null;
+    }
+
     public void sign(PrivateKey privateKey) {
-        this.signature = CryptoUtils.signData(this.toString(), privateKey);
+        this.signature = CryptoUtils.signData(getEncoding(), privateKey);
     }
 
     public boolean verifySignature(PublicKey publicKey) {
-        return this.signature != null && CryptoUtils.verifySignature(this.toString(), this.signature, publicKey);
+        return this.signature != null && CryptoUtils.verifySignature(getEncoding(), this.signature, publicKey);
     }
 
     // Enum for request types
@@ -72,6 +112,7 @@ public abstract class ClientReq extends BlockchainMessage {
     @Override
     public void fromJson(JsonObject json) {
         super.fromJson(json);
+        contentChanged();
         this.senderId = json.get("senderId").getAsInt();
         if (json.has("signature")) {
             this.signature = json.get("signature").getAsString();
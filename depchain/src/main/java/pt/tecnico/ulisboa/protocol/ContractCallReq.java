@@ -86,6 +86,15 @@ public class ContractCallReq extends ClientReq {
         return Bytes.fromHexString(argsString.toString());
     }
 
+    @Override
+    void encodeFields(CanonicalEncoder out) {
+        super.encodeFields(out);
+        out.writeString(contractName)
+                .writeString(methodName)
+                .writeBigInteger(value)
+                .writeStrings(args);
+    }
+
     @Override
     public boolean isValid() {
         return super.isValid();
@@ -38,6 +38,13 @@ public class TransferDepCoinReq extends ClientReq {
 
     public void setReceiver(String receiver) {
         this.receiverAddr = receiver;
+        contentChanged();
+    }
+
+    @Override
+    void encodeFields(CanonicalEncoder out) {
+        super.encodeFields(out);
+        out.writeString(receiverAddr).writeBigInteger(amount);
     }
 
     @Override
@@ -17,16 +17,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
 
 import org.hyperledger.besu.datatypes.Address;
 
 import pt.tecnico.ulisboa.Config;
+import pt.tecnico.ulisboa.blockchain.BlockBuilder;
 import pt.tecnico.ulisboa.blockchain.BlockchainManager;
 import pt.tecnico.ulisboa.blockchain.blocks.Block;
+import pt.tecnico.ulisboa.consensus.ConsensusManager;
 import pt.tecnico.ulisboa.consensus.bft.BFTConsensus;
 import pt.tecnico.ulisboa.consensus.bft.message.ConsensusMessage;
 import pt.tecnico.ulisboa.consensus.bft.message.ConsensusMessageHandler;
@@ -58,6 +62,11 @@ public class Server {
     private Set<ClientReq> decidedTxsSet = ConcurrentHashMap.newKeySet();
 
     private BlockchainManager blockchainManager = new BlockchainManager();
+    private BlockBuilder blockBuilder = new BlockBuilder();
+
+    // Config.HYBRID_CONSENSUS only: blocks are mined instead of decided in BFT rounds
+    private ConsensusManager hybridConsensus;
+    private BlockingDeque<ClientReq> hybridTxs = new LinkedBlockingDeque<>();
 
     private ExecutorService exec = Executors.newFixedThreadPool(Config.NUM_MEMBERS * 10);
 
@@ -127,17 +136,29 @@ public class Server {
 
         });
 
-        BFTConsensus consensusLoop = new BFTConsensus(this);
-        Thread consensusThread = new Thread(() -> {
-            try {
-                consensusLoop.start();
-            } catch (Exception e) {
-                Logger.ERROR("Consensus thread failed with exception", e);
-            }
-        });
+        Thread consensusThread;
+        if (Config.HYBRID_CONSENSUS) {
+            consensusThread = new Thread(() -> {
+                try {
+                    hybridConsensus.startConsensus();
+                } catch (Exception e) {
+                    Logger.ERROR("Consensus thread failed with exception", e);
+                }
+            });
+            consensusThread.setName("Hybrid-Consensus-Thread");
+        } else {
+            BFTConsensus consensusLoop = new BFTConsensus(this);
+            consensusThread = new Thread(() -> {
+                try {
+                    consensusLoop.start();
+                } catch (Exception e) {
+                    Logger.ERROR("Consensus thread failed with exception", e);
+                }
+            });
+            consensusThread.setName("BFT-Consensus-Thread");
+        }
 
         transactionExecutorThread.setName("Transaction-Executor-Thread");
-        consensusThread.setName("BFT-Consensus-Thread");
 
         transactionExecutorThread.start();
         consensusThread.start();
@@ -162,6 +183,10 @@ public class Server {
 
             serversManager = new ServerAplManager(address, port, privateKey);
 
+            if (Config.HYBRID_CONSENSUS) {
+                setupHybridConsensus();
+            }
+
             // Initialize APLs, one for each destination node
 
             for (int i = 0; i < Config.NUM_MEMBERS; i++) {
@@ -179,7 +204,9 @@ public class Server {
 
                 Logger.LOG("Creating APL for destination node " + destAddr + ":" + destPort);
 
-                ConsensusMessageHandler handler = new ConsensusMessageHandler(consensusMessages);
+                ConsensusMessageHandler handler = Config.HYBRID_CONSENSUS
+                        ? new ConsensusMessageHandler(consensusMessages, hybridConsensus::proposeBlock)
+                        : new ConsensusMessageHandler(consensusMessages);
                 serversManager.createAPL(i, destAddr, destPort, publicKeys.get(i), handler);
                 Logger.LOG("APL created for destination node " + i);
             }
@@ -197,6 +224,25 @@ public class Server {
         }
     }
 
+    // The hybrid chain starts from its own genesis; the blocks that become final are appended
+    // to the blockchain and their transactions executed, as decided BFT blocks are
+    private void setupHybridConsensus() {
+        hybridConsensus = new ConsensusManager(List.of(), hybridTxs,
+                Config.METRICS_PORT > 0 ? Config.METRICS_PORT + nodeId : 0);
+        hybridConsensus.setBroadcaster(block -> {
+            Logger.LOG("Broadcasting mined block " + block.getHash() + " at height " + block.getHeight());
+            serversManager.sendToAll(block);
+        });
+        hybridConsensus.setFinalizedBlockHandler(block -> {
+            Logger.LOG("Block " + block.getHash() + " at height " + block.getHeight() + " is final");
+            addBlockToBlockchain(block);
+            for (ClientReq tx : block.getTransactions()) {
+                pushTxToExecute(tx);
+                addDecidedTx(tx);
+            }
+        });
+    }
+
     private void readPrivateKey() throws Exception {
         String privateKeyPath = String.format("%s/priv%02d.key", keysDirectory, nodeId);
         Logger.LOG("Reading private key from: " + privateKeyPath);
@@ -285,9 +331,21 @@ public class Server {
             return;
         }
 
-        receivedTxs.getResource().add(tx);
+        if (Config.HYBRID_CONSENSUS) {
+            // Blocks are built by the mining pipeline (see ConsensusManager)
+            hybridTxs.add(tx);
+            return;
+        }
+
+        List<ClientReq> rcvTxs = receivedTxs.getResource();
+        blockBuilder.received(tx);
+        boolean ready;
+        synchronized (rcvTxs) {
+            rcvTxs.add(tx);
+            ready = !blockBuilder.select(rcvTxs, System.currentTimeMillis()).isEmpty();
+        }
 
-        if (receivedTxs.getResource().size() >= Config.TX_PER_BLOCK) {
+        if (ready) {
             Logger.DEBUG("A new block is ready to be fetched");
             receivedTxs.notifyChange();
         }
@@ -296,25 +354,23 @@ public class Server {
     public Block peekBlockToConsensus() {
         List<ClientReq> rcvTxs = receivedTxs.getResource();
 
-        if (rcvTxs.size() < Config.TX_PER_BLOCK) {
-            Logger.DEBUG("Not enough transactions to create a block: " + rcvTxs.size());
-            return null;
-        }
-
-        List<ClientReq> txs = new ArrayList<>();
-        for (int i=0; i < Config.TX_PER_BLOCK && i < rcvTxs.size(); i++) {
-            ClientReq tx = rcvTxs.get(i);
-            if (decidedTxsSet.contains(tx)) {
-                Logger.DEBUG("Transaction peeked already decided: " + tx.toString());
-                rcvTxs.remove(i--);
-                continue;
-            }
-
-            txs.add(tx);
+        List<ClientReq> txs;
+        synchronized (rcvTxs) {
+            List<ClientReq> decided = new ArrayList<>();
+            rcvTxs.removeIf(tx -> {
+                if (decidedTxsSet.contains(tx)) {
+                    Logger.DEBUG("Transaction peeked already decided: " + tx.toString());
+                    decided.add(tx);
+                    return true;
+                }
+                return false;
+            });
+            blockBuilder.forget(decided);
+            txs = blockBuilder.select(rcvTxs, System.currentTimeMillis());
         }
 
-        if (txs.size() < Config.TX_PER_BLOCK) {
-            Logger.DEBUG("Not enough transactions to create a block: " + txs.size());
+        if (txs.isEmpty()) {
+            Logger.DEBUG("No block ready yet, pending transactions: " + rcvTxs.size());
             return null;
         }
 
@@ -322,15 +378,29 @@ public class Server {
     }
     
     public Block peekBlockToConsensusOrWait(Integer timeout) throws InterruptedException {
+        long deadline = timeout < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
         while (true) {
             Block value = peekBlockToConsensus();
             if (value != null) {
                 return value;
             }
 
-            boolean hasTimedOut = !receivedTxs.waitForChange(timeout);
+            // Also wake up when the oldest pending transaction has lingered long enough
+            long now = System.currentTimeMillis();
+            long wait;
+            synchronized (receivedTxs.getResource()) {
+                wait = Math.min(deadline - now, blockBuilder.timeUntilReady(receivedTxs.getResource(), now));
+            }
+            if (wait <= 0) {
+                if (now >= deadline) {
+                    return null;
+                }
+                continue;
+            }
+
+            boolean changed = receivedTxs.waitForChange(wait == Long.MAX_VALUE ? -1 : (int) Math.min(wait, Integer.MAX_VALUE));
 
-            if (hasTimedOut) {
+            if (!changed && System.currentTimeMillis() >= deadline) {
                 return null;
             }
         }
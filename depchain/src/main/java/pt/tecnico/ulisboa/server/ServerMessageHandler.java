@@ -5,6 +5,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import org.hyperledger.besu.datatypes.Address;
 
+import pt.tecnico.ulisboa.blockchain.TransactionVerifier;
 import pt.tecnico.ulisboa.network.MessageHandler;
 import pt.tecnico.ulisboa.protocol.BlockchainMessage;
 import pt.tecnico.ulisboa.protocol.BlockchainMessage.BlockchainMessageType;
@@ -70,7 +71,7 @@ public class ServerMessageHandler implements MessageHandler {
             Logger.LOG("Client key not found for id: " + message.getSenderId());
             return;
         }
-        if (!message.verifySignature(clientKU)) {
+        if (!TransactionVerifier.getDefault().verify(message, clientKU)) {
             Logger.LOG("Invalid signature for message: " + message);
             return;
         }
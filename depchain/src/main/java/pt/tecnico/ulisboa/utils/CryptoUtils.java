@@ -127,10 +127,14 @@ public class CryptoUtils {
     }
 
     public static String signData(String data, PrivateKey privateKey) {
+        return signData(data.getBytes(StandardCharsets.UTF_8), privateKey);
+    }
+
+    public static String signData(byte[] data, PrivateKey privateKey) {
         try {
             Signature signature = Signature.getInstance("SHA256withRSA");
             signature.initSign(privateKey);
-            signature.update(data.getBytes(StandardCharsets.UTF_8));
+            signature.update(data);
             return Base64.getEncoder().encodeToString(signature.sign());
         } catch (Exception e) {
             e.printStackTrace();
@@ -139,11 +143,14 @@ public class CryptoUtils {
     }
 
     public static boolean verifySignature(String data, String base64Signature, PublicKey publicKey) {
+        return verifySignature(data.getBytes(StandardCharsets.UTF_8), base64Signature, publicKey);
+    }
 
+    public static boolean verifySignature(byte[] data, String base64Signature, PublicKey publicKey) {
         try {
             Signature signature = Signature.getInstance("SHA256withRSA");
             signature.initVerify(publicKey);
-            signature.update(data.getBytes(StandardCharsets.UTF_8));
+            signature.update(data);
             return signature.verify(Base64.getDecoder().decode(base64Signature));
         } catch (Exception e) {
             e.printStackTrace();
@@ -0,0 +1,102 @@
+package pt.tecnico.ulisboa.utils.types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Fixed-size array whose set() returns a new version and leaves this one readable, without
+// copying: all versions derived from the same array share a single backing array, held by
+// the most recently used version. Every other version only records the one slot in which it
+// differs from the version it points to (Baker's rerooting). Reading a version that is k
+// updates away first moves the backing array to it, in O(k); reading or extending the
+// latest version is O(1), as when a chain grows one block at a time.
+// Newer versions do not reference older ones, so versions nobody holds are collected.
+// Thread-safe: the versions of one array share a lock.
+public final class PersistentArray<T> {
+    private final Object lock;
+    // Non-null for the version holding the backing array
+    private Object[] data;
+    // Otherwise this version is `next` with slot `index` set to `value`
+    private int index;
+    private Object value;
+    private PersistentArray<T> next;
+
+    public PersistentArray(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive");
+        }
+        this.lock = new Object();
+        this.data = new Object[size];
+    }
+
+    private PersistentArray(Object lock, Object[] data) {
+        this.lock = lock;
+        this.data = data;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int i) {
+        synchronized (lock) {
+            reroot();
+            return (T) data[i];
+        }
+    }
+
+    // The first `n` slots, in order
+    @SuppressWarnings("unchecked")
+    public List<T> prefix(int n) {
+        synchronized (lock) {
+            reroot();
+            List<T> values = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                values.add((T) data[i]);
+            }
+            return values;
+        }
+    }
+
+    // A version with slot `i` set to `element`; this one keeps its value
+    public PersistentArray<T> set(int i, T element) {
+        synchronized (lock) {
+            reroot();
+            Object[] array = data;
+            PersistentArray<T> updated = new PersistentArray<>(lock, array);
+            data = null;
+            index = i;
+            value = array[i];
+            next = updated;
+            array[i] = element;
+            return updated;
+        }
+    }
+
+    public int size() {
+        synchronized (lock) {
+            reroot();
+            return data.length;
+        }
+    }
+
+    // Moves the backing array to this version, reversing the diffs on the way
+    private void reroot() {
+        if (data != null) {
+            return;
+        }
+        List<PersistentArray<T>> path = new ArrayList<>();
+        for (PersistentArray<T> version = this; version.data == null; version = version.next) {
+            path.add(version);
+        }
+        for (int k = path.size() - 1; k >= 0; k--) {
+            PersistentArray<T> version = path.get(k);
+            PersistentArray<T> holder = version.next;
+            Object[] array = holder.data;
+            holder.data = null;
+            holder.index = version.index;
+            holder.value = array[version.index];
+            holder.next = version;
+            array[version.index] = version.value;
+            version.data = array;
+            version.value = null;
+            version.next = null;
+        }
+    }
+}
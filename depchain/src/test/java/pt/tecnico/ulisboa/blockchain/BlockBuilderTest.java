@@ -0,0 +1,119 @@
+package pt.tecnico.ulisboa.blockchain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import org.junit.Test;
+
+import pt.tecnico.ulisboa.protocol.ClientReq;
+import pt.tecnico.ulisboa.protocol.TransferDepCoinReq;
+
+public class BlockBuilderTest {
+    private static final long LINGER = 200;
+
+    // All the same size
+    private static List<ClientReq> txs(int count) {
+        List<ClientReq> txs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            txs.add(new TransferDepCoinReq(1, 1000L + i, "0x" + "0".repeat(40), BigInteger.ONE));
+        }
+        return txs;
+    }
+
+    private static int size() {
+        return BlockBuilder.sizeOf(txs(1).get(0));
+    }
+
+    @Test
+    public void waitsUntilFullOrLingered() {
+        BlockBuilder builder = new BlockBuilder(4, 1 << 20, LINGER);
+        List<ClientReq> pending = txs(3);
+        pending.forEach(builder::received);
+        long now = System.currentTimeMillis();
+
+        assertTrue(builder.select(pending, now).isEmpty());
+        assertTrue(builder.timeUntilReady(pending, now) > 0);
+        assertEquals(pending, builder.select(pending, now + LINGER));
+        assertEquals(0, builder.timeUntilReady(pending, now + LINGER));
+
+        pending.addAll(txs(2));
+        assertEquals(pending.subList(0, 4), builder.select(pending, now));
+    }
+
+    @Test
+    public void blockIsFullWhenTheNextTransactionDoesNotFit() {
+        BlockBuilder builder = new BlockBuilder(100, 2 * size() + 1, LINGER);
+        List<ClientReq> pending = txs(3);
+        assertEquals(pending.subList(0, 2), builder.select(pending, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void blockIsFullWhenItReachesMaxBytes() {
+        BlockBuilder builder = new BlockBuilder(100, 2 * size(), LINGER);
+        List<ClientReq> pending = txs(2);
+        assertEquals(pending, builder.select(pending, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void oversizedTransactionGetsItsOwnBlock() {
+        BlockBuilder builder = new BlockBuilder(100, size() / 2, LINGER);
+        List<ClientReq> pending = txs(2);
+        assertEquals(pending.subList(0, 1), builder.select(pending, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void takeStopsAtTheLimitAndPutsBackWhatDoesNotFit() throws InterruptedException {
+        BlockBuilder builder = new BlockBuilder(100, 2 * size() + 1, LINGER);
+        BlockingDeque<ClientReq> queue = new LinkedBlockingDeque<>(txs(3));
+        List<ClientReq> third = List.of(queue.getLast());
+
+        List<ClientReq> block = builder.take(queue);
+        assertEquals(2, block.size());
+        assertEquals(third, new ArrayList<>(queue));
+    }
+
+    @Test
+    public void takeReturnsWhatArrivedOnceTheFirstHasLingered() throws InterruptedException {
+        BlockBuilder builder = new BlockBuilder(100, 1 << 20, LINGER);
+        BlockingDeque<ClientReq> queue = new LinkedBlockingDeque<>(txs(2));
+        long start = System.currentTimeMillis();
+        List<ClientReq> block = builder.take(queue);
+        assertEquals(2, block.size());
+        assertTrue(System.currentTimeMillis() - start >= LINGER);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void interruptedTakePutsEverythingBackInOrder() throws Exception {
+        BlockBuilder builder = new BlockBuilder(100, 1 << 20, 60_000);
+        List<ClientReq> txs = txs(3);
+        BlockingDeque<ClientReq> queue = new LinkedBlockingDeque<>(txs);
+
+        Thread taker = new Thread(() -> {
+            try {
+                builder.take(queue);
+            } catch (InterruptedException e) {
+                // expected
+            }
+        });
+        taker.start();
+        // Until the taker drained the queue and waits for more
+        while (!queue.isEmpty()) {
+            Thread.sleep(10);
+        }
+        ClientReq late = txs(1).get(0);
+        taker.interrupt();
+        taker.join();
+        queue.add(late);
+
+        List<ClientReq> expected = new ArrayList<>(txs);
+        expected.add(late);
+        assertEquals(expected, new ArrayList<>(queue));
+    }
+}
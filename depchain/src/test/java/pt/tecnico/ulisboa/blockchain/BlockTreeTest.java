@@ -0,0 +1,163 @@
+package pt.tecnico.ulisboa.blockchain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
+import pt.tecnico.ulisboa.blockchain.blocks.PoWTarget;
+
+public class BlockTreeTest {
+    private final HybridBlock genesis = HybridBlock.genesis();
+
+    // Worth about 16^zeros hashes (zeros are hex digits), linked by the given name
+    private static HybridBlock block(HybridBlock parent, int zeros, String name) {
+        HybridBlock block = new HybridBlock(parent.getLinkHash(), parent.getHeight() + 1, List.of(),
+                PoWTarget.fromLeadingZeros(zeros));
+        block.setPOWHash(name);
+        return block;
+    }
+
+    @Test
+    public void headIsTheBranchWithTheMostWork() {
+        BlockTree tree = new BlockTree(genesis, 6, 8);
+        HybridBlock a1 = block(genesis, 4, "a1");
+        HybridBlock a2 = block(a1, 4, "a2");
+        assertTrue(tree.add(a1));
+        assertTrue(tree.add(a2));
+        assertSame(a2, tree.getHead());
+
+        // Shorter, but heavier
+        HybridBlock b1 = block(genesis, 12, "b1");
+        assertTrue(tree.add(b1));
+        assertSame(b1, tree.getHead());
+        assertEquals(List.of(genesis, b1), tree.getCanonicalChain());
+        assertSame(genesis, tree.commonAncestor(a2, b1));
+        // The lighter branch stays, it may still grow past the head
+        assertTrue(tree.contains("a2"));
+        assertEquals(BlockTree.workOf(a1).add(BlockTree.workOf(a2)), tree.getWork("a2"));
+    }
+
+    @Test
+    public void tiesKeepTheHeadSeenFirst() {
+        BlockTree tree = new BlockTree(genesis, 6, 8);
+        HybridBlock a = block(genesis, 8, "a");
+        HybridBlock b = block(genesis, 8, "b");
+        tree.add(a);
+        tree.add(b);
+        assertSame(a, tree.getHead());
+        assertEquals(2L, (long) tree.getBlocksAt(1).size());
+    }
+
+    @Test
+    public void rejectsDuplicatesOrphansAndWrongHeights() {
+        BlockTree tree = new BlockTree(genesis, 6, 8);
+        HybridBlock a = block(genesis, 4, "a");
+        assertTrue(tree.add(a));
+        assertFalse(tree.add(a));
+        assertFalse(tree.add(block(block(genesis, 4, "unknown"), 4, "child")));
+
+        HybridBlock skipping = new HybridBlock("a", 3, List.of(), PoWTarget.fromLeadingZeros(4));
+        skipping.setPOWHash("skipping");
+        assertFalse(tree.add(skipping));
+        assertEquals(2L, (long) tree.size());
+    }
+
+    @Test
+    public void blocksBelowTheFinalityDepthArePruned() {
+        BlockTree tree = new BlockTree(genesis, 2, 8);
+        HybridBlock side = block(genesis, 1, "side");
+        tree.add(side);
+        HybridBlock c1 = block(genesis, 4, "c1");
+        HybridBlock c2 = block(c1, 4, "c2");
+        HybridBlock c3 = block(c2, 4, "c3");
+        tree.add(c1);
+        tree.add(c2);
+        assertSame(genesis, tree.getRoot());
+        assertTrue(tree.takeFinalized().isEmpty());
+
+        tree.add(c3);
+        assertSame(c1, tree.getRoot());
+        assertEquals(List.of(c1), tree.takeFinalized());
+        assertTrue(tree.takeFinalized().isEmpty());
+        // Neither the old root nor the fork off it survive
+        assertFalse(tree.contains(genesis.getLinkHash()));
+        assertFalse(tree.contains("side"));
+        assertFalse(tree.add(block(side, 30, "late")));
+
+        HybridBlock c4 = block(c3, 4, "c4");
+        HybridBlock c5 = block(c4, 4, "c5");
+        tree.add(c4);
+        tree.add(c5);
+        assertSame(c3, tree.getRoot());
+        assertEquals(List.of(c2, c3), tree.takeFinalized());
+        assertEquals(List.of(c3, c4, c5), tree.getCanonicalChain());
+        assertEquals(3L, (long) tree.size());
+    }
+
+    @Test
+    public void aReorgCanFinalizeSeveralBlocksAtOnce() {
+        BlockTree tree = new BlockTree(genesis, 2, 8);
+        HybridBlock main = block(genesis, 12, "main");
+        tree.add(main);
+        // Longer but lighter, so never the head until its last block
+        HybridBlock s1 = block(genesis, 1, "s1");
+        HybridBlock s2 = block(s1, 1, "s2");
+        HybridBlock s3 = block(s2, 1, "s3");
+        HybridBlock s4 = block(s3, 1, "s4");
+        for (HybridBlock block : List.of(s1, s2, s3, s4)) {
+            tree.add(block);
+        }
+        assertSame(main, tree.getHead());
+        assertTrue(tree.takeFinalized().isEmpty());
+
+        HybridBlock s5 = block(s4, 16, "s5");
+        tree.add(s5);
+        assertSame(s5, tree.getHead());
+        assertSame(s3, tree.getRoot());
+        assertEquals(List.of(s1, s2, s3), tree.takeFinalized());
+        assertFalse(tree.contains("main"));
+    }
+
+    @Test
+    public void aFullHeightEvictsItsWeakestForkWithItsDescendants() {
+        BlockTree tree = new BlockTree(genesis, 6, 2);
+        HybridBlock x = block(genesis, 4, "x");
+        HybridBlock x2 = block(x, 4, "x2");
+        HybridBlock y = block(genesis, 10, "y");
+        tree.add(x);
+        tree.add(x2);
+        tree.add(y);
+        assertSame(y, tree.getHead());
+
+        // More work than x, which goes with its child
+        HybridBlock z = block(genesis, 5, "z");
+        assertTrue(tree.add(z));
+        assertNull(tree.get("x"));
+        assertNull(tree.get("x2"));
+        assertTrue(tree.getBlocksAt(2).isEmpty());
+
+        // Less work than every sibling that could make room
+        assertFalse(tree.add(block(genesis, 2, "w")));
+        assertEquals(List.of(y, z), tree.getBlocksAt(1));
+    }
+
+    @Test
+    public void theHeadBranchIsNeverEvicted() {
+        BlockTree tree = new BlockTree(genesis, 6, 1);
+        HybridBlock a = block(genesis, 4, "a");
+        HybridBlock a2 = block(a, 4, "a2");
+        tree.add(a);
+        tree.add(a2);
+
+        // Even with more work on its own, a sibling cannot displace the head's ancestor
+        assertFalse(tree.add(block(genesis, 6, "b")));
+        assertSame(a2, tree.getHead());
+    }
+}
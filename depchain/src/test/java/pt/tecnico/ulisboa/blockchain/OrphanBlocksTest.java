@@ -0,0 +1,59 @@
+package pt.tecnico.ulisboa.blockchain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import pt.tecnico.ulisboa.blockchain.blocks.Block;
+
+public class OrphanBlocksTest {
+
+    private static Block block(String parent, int n) {
+        Block block = new Block(parent, n, List.of());
+        block.setHash("block" + n);
+        return block;
+    }
+
+    @Test
+    public void childrenWaitForTheirParent() {
+        OrphanBlocks orphans = new OrphanBlocks(8);
+        Block a = block("p", 1);
+        Block b = block("p", 2);
+        Block c = block("q", 3);
+        assertTrue(orphans.add(a));
+        assertTrue(orphans.add(b));
+        assertTrue(orphans.add(c));
+        assertFalse(orphans.add(block("p", 1)));
+        assertEquals(3L, (long) orphans.size());
+
+        assertEquals(List.of(a, b), orphans.takeChildren("p"));
+        assertTrue(orphans.takeChildren("p").isEmpty());
+        assertTrue(orphans.takeChildren("unknown").isEmpty());
+        assertEquals(1L, (long) orphans.size());
+        assertEquals(List.of(c), orphans.takeChildren("q"));
+    }
+
+    @Test
+    public void oldestParentsAreDroppedWhenFull() {
+        OrphanBlocks orphans = new OrphanBlocks(3);
+        orphans.add(block("p", 1));
+        orphans.add(block("p", 2));
+        orphans.add(block("q", 3));
+        orphans.add(block("r", 4));
+
+        // Both of p's children go, leaving room to spare
+        assertEquals(2L, (long) orphans.size());
+        assertTrue(orphans.takeChildren("p").isEmpty());
+        assertEquals(1L, (long) orphans.takeChildren("q").size());
+        assertEquals(1L, (long) orphans.takeChildren("r").size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsCapacity() {
+        new OrphanBlocks(0);
+    }
+}
@@ -0,0 +1,140 @@
+package pt.tecnico.ulisboa.blockchain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import pt.tecnico.ulisboa.protocol.ClientReq;
+import pt.tecnico.ulisboa.protocol.TransferDepCoinReq;
+
+// Valid signatures are verified once, a block's check stops at its first bad signature
+public class TransactionVerifierTest {
+    private static final KeyPair KEYS = generate();
+    private static final KeyPair OTHER_KEYS = generate();
+
+    private static KeyPair generate() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Counts the RSA verifications it goes through, each taking at least `delay` ms
+    private static final class CountingReq extends TransferDepCoinReq {
+        final AtomicInteger verifications = new AtomicInteger();
+        final long delay;
+
+        CountingReq(int n, long delay) {
+            super(n, (long) n, "0x" + "0".repeat(39) + (n % 10), BigInteger.valueOf(n));
+            this.delay = delay;
+        }
+
+        @Override
+        public boolean verifySignature(PublicKey publicKey) {
+            verifications.incrementAndGet();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.verifySignature(publicKey);
+        }
+    }
+
+    private static CountingReq signed(int n, KeyPair keys, long delay) {
+        CountingReq tx = new CountingReq(n, delay);
+        tx.sign(keys.getPrivate());
+        return tx;
+    }
+
+    @Test
+    public void validSignaturesAreVerifiedOnce() {
+        TransactionVerifier verifier = new TransactionVerifier(2, 16);
+        CountingReq tx = signed(1, KEYS, 0);
+        assertTrue(verifier.verify(tx, KEYS.getPublic()));
+        assertTrue(verifier.verify(tx, KEYS.getPublic()));
+        assertEquals(1L, (long) tx.verifications.get());
+
+        // Same transaction and signature, received again as another object
+        CountingReq copy = new CountingReq(1, 0);
+        copy.sign(KEYS.getPrivate());
+        assertTrue(verifier.verify(copy, KEYS.getPublic()));
+        assertEquals(0L, (long) copy.verifications.get());
+    }
+
+    @Test
+    public void invalidSignaturesAreNotCached() {
+        TransactionVerifier verifier = new TransactionVerifier(2, 16);
+        CountingReq forged = signed(2, OTHER_KEYS, 0);
+        assertFalse(verifier.verify(forged, KEYS.getPublic()));
+        assertFalse(verifier.verify(forged, KEYS.getPublic()));
+        assertEquals(2L, (long) forged.verifications.get());
+
+        // Valid under one key says nothing about another
+        CountingReq tx = signed(3, KEYS, 0);
+        assertTrue(verifier.verify(tx, KEYS.getPublic()));
+        assertFalse(verifier.verify(tx, OTHER_KEYS.getPublic()));
+        assertEquals(2L, (long) tx.verifications.get());
+
+        CountingReq unsigned = new CountingReq(4, 0);
+        assertFalse(verifier.verify(unsigned, KEYS.getPublic()));
+        assertEquals(0L, (long) unsigned.verifications.get());
+    }
+
+    @Test
+    public void findsTheInvalidSignature() {
+        TransactionVerifier verifier = new TransactionVerifier(4, 64);
+        List<ClientReq> txs = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            txs.add(signed(10 + i, KEYS, 0));
+        }
+        List<PublicKey> keys = Collections.nCopies(txs.size(), KEYS.getPublic());
+        assertEquals(-1L, (long) verifier.findInvalidSignature(txs, keys));
+        assertEquals(-1L, (long) verifier.findInvalidSignature(List.of(), List.of()));
+
+        txs.set(5, signed(15, OTHER_KEYS, 0));
+        assertEquals(5L, (long) verifier.findInvalidSignature(txs, keys));
+        assertEquals(0L, (long) verifier.findInvalidSignature(txs.subList(5, 6), keys.subList(5, 6)));
+    }
+
+    @Test
+    public void theFirstFailureSettlesTheResult() {
+        TransactionVerifier verifier = new TransactionVerifier(2, 64);
+        long delay = 300;
+        List<CountingReq> txs = new ArrayList<>();
+        txs.add(signed(20, OTHER_KEYS, 0));
+        for (int i = 1; i < 12; i++) {
+            txs.add(signed(20 + i, KEYS, delay));
+        }
+
+        long start = System.currentTimeMillis();
+        int invalid = verifier.findInvalidSignature(new ArrayList<>(txs),
+                Collections.nCopies(txs.size(), KEYS.getPublic()));
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(0L, (long) invalid);
+        // Checking all of them would take 11 * delay / 2 threads
+        assertTrue("took " + elapsed + " ms", elapsed < 3 * delay);
+        // Checks still queued after the failure never run
+        int verified = 0;
+        for (CountingReq tx : txs) {
+            verified += tx.verifications.get();
+        }
+        assertTrue(verified + " verifications", verified <= 3);
+    }
+}
@@ -0,0 +1,148 @@
+package pt.tecnico.ulisboa.blockchain.blocks;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+import org.junit.Test;
+
+import pt.tecnico.ulisboa.protocol.ClientReq;
+import pt.tecnico.ulisboa.protocol.TransferDepCoinReq;
+
+public class MerkleTreeTest {
+    private static TransferDepCoinReq tx(int n) {
+        return new TransferDepCoinReq(n, (long) n, "0x" + "0".repeat(39) + (n % 10), BigInteger.valueOf(n));
+    }
+
+    private static List<ClientReq> txs(int count) {
+        List<ClientReq> txs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            txs.add(tx(i));
+        }
+        return txs;
+    }
+
+    @Test
+    public void emptyTreeHasTheHashOfNothing() throws Exception {
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(), new MerkleTree().getRoot());
+    }
+
+    @Test
+    public void leavesAndNodesAreDomainSeparated() throws Exception {
+        List<ClientReq> txs = txs(2);
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        sha.update((byte) 0x00);
+        byte[] left = sha.digest(txs.get(0).getEncoding());
+        sha.update((byte) 0x00);
+        byte[] right = sha.digest(txs.get(1).getEncoding());
+        sha.update((byte) 0x01);
+        sha.update(left);
+        byte[] root = sha.digest(right);
+
+        assertArrayEquals(left, new MerkleTree(txs.subList(0, 1)).getRoot());
+        assertArrayEquals(root, new MerkleTree(txs).getRoot());
+    }
+
+    @Test
+    public void oddLeavesAreNotDuplicated() {
+        List<ClientReq> three = txs(3);
+        List<ClientReq> four = new ArrayList<>(three);
+        four.add(three.get(2));
+        assertFalse(Arrays.equals(new MerkleTree(three).getRoot(), new MerkleTree(four).getRoot()));
+    }
+
+    @Test
+    public void appendingGivesTheSameTreeAsBuildingAtOnce() {
+        List<ClientReq> txs = txs(40);
+        MerkleTree incremental = new MerkleTree();
+        for (int n = 1; n <= txs.size(); n++) {
+            incremental.append(txs.get(n - 1));
+            MerkleTree bulk = new MerkleTree(txs.subList(0, n));
+            assertArrayEquals("n = " + n, bulk.getRoot(), incremental.getRoot());
+            assertEquals(n, incremental.size());
+        }
+    }
+
+    @Test
+    public void proofsVerifyOnlyTheirOwnTransaction() {
+        for (int n = 1; n <= 17; n++) {
+            List<ClientReq> txs = txs(n);
+            MerkleTree tree = new MerkleTree(txs);
+            byte[] root = tree.getRoot();
+            for (int i = 0; i < n; i++) {
+                MerkleTree.Proof proof = tree.getProof(i);
+                assertTrue("n = " + n + ", i = " + i, proof.verify(txs.get(i), root));
+                if (n > 1) {
+                    assertFalse(proof.verify(txs.get((i + 1) % n), root));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void proofWithAnotherIndexOrSiblingFails() {
+        List<ClientReq> txs = txs(6);
+        MerkleTree tree = new MerkleTree(txs);
+        MerkleTree.Proof proof = tree.getProof(2);
+
+        MerkleTree.Proof moved = new MerkleTree.Proof(3, proof.getLeafCount(), proof.getSiblings());
+        assertFalse(moved.verify(txs.get(2), tree.getRoot()));
+
+        List<byte[]> siblings = new ArrayList<>(proof.getSiblings());
+        byte[] tampered = siblings.get(0).clone();
+        tampered[0] ^= 1;
+        siblings.set(0, tampered);
+        assertFalse(new MerkleTree.Proof(2, proof.getLeafCount(), siblings).verify(txs.get(2), tree.getRoot()));
+    }
+
+    @Test
+    public void proofsSurviveSerialization() throws Exception {
+        List<ClientReq> txs = txs(5);
+        MerkleTree tree = new MerkleTree(txs);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(tree.getProof(4));
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            MerkleTree.Proof proof = (MerkleTree.Proof) in.readObject();
+            assertTrue(proof.verify(txs.get(4), tree.getRoot()));
+        }
+    }
+
+    @Test
+    public void changedTransactionIsNoLongerCovered() {
+        List<ClientReq> txs = txs(5);
+        MerkleTree tree = new MerkleTree(txs);
+        assertTrue(tree.covers(txs));
+        assertFalse(tree.covers(txs.subList(0, 4)));
+
+        ((TransferDepCoinReq) txs.get(2)).setReceiver("0x" + "1".repeat(40));
+        assertFalse(tree.covers(txs));
+    }
+
+    @Test
+    public void blockRebuildsItsTreeWhenATransactionChanges() {
+        List<ClientReq> txs = txs(5);
+        Block block = new Block("prev", 1, txs);
+        String before = block.getTransactionsHash();
+
+        ((TransferDepCoinReq) txs.get(3)).setReceiver("0x" + "2".repeat(40));
+        String after = block.getTransactionsHash();
+        assertNotEquals(before, after);
+        assertArrayEquals(new MerkleTree(txs).getRoot(), HexFormat.of().parseHex(after));
+        assertTrue(block.getInclusionProof(3).verify(txs.get(3), HexFormat.of().parseHex(after)));
+    }
+}
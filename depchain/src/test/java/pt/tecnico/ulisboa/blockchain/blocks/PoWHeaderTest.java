@@ -0,0 +1,71 @@
+package pt.tecnico.ulisboa.blockchain.blocks;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PoWHeaderTest {
+    private static final String PREV = "00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff";
+    private static final String ROOT = "ffeeddccbbaa99887766554433221100ffeeddccbbaa99887766554433221100";
+
+    @Test
+    public void midstateHashIsTheFullDigestOfTheHeader() {
+        PoWHeader header = new PoWHeader(PREV, ROOT, 0x1d00ffff, 1_700_000_000_000L);
+        Random random = new Random(12);
+        long[] nonces = new long[1000];
+        for (int i = 0; i < nonces.length; i++) {
+            nonces[i] = i < 10 ? i : random.nextLong();
+        }
+        nonces[nonces.length - 1] = Long.MIN_VALUE;
+        nonces[nonces.length - 2] = -1;
+
+        for (long nonce : nonces) {
+            byte[] full = PoWHeader.sha256().digest(header.encode(nonce));
+            assertArrayEquals("nonce " + nonce, full, header.hash(nonce));
+        }
+    }
+
+    @Test
+    public void layout() {
+        long timestamp = 0x0102030405060708L;
+        long nonce = 0x1112131415161718L;
+        byte[] encoded = new PoWHeader(PREV, ROOT, 0x1d00ffff, timestamp).encode(nonce);
+        assertEquals(84, PoWHeader.SIZE);
+        assertEquals(PoWHeader.SIZE, encoded.length);
+
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        byte[] prev = new byte[32];
+        byte[] root = new byte[32];
+        buffer.get(prev).get(root);
+        assertArrayEquals(HexFormat.of().parseHex(PREV), prev);
+        assertArrayEquals(HexFormat.of().parseHex(ROOT), root);
+        assertEquals(0x1d00ffff, buffer.getInt());
+        assertEquals(timestamp, buffer.getLong());
+        assertEquals(nonce, buffer.order(ByteOrder.LITTLE_ENDIAN).getLong());
+    }
+
+    @Test
+    public void nonHexHashesAreHashedAndNullIsZeros() {
+        byte[] encoded = new PoWHeader("genesis", null, 0, 0).encode(0);
+        assertArrayEquals(PoWHeader.sha256().digest("genesis".getBytes(StandardCharsets.UTF_8)),
+                Arrays.copyOfRange(encoded, 0, 32));
+        assertArrayEquals(new byte[32], Arrays.copyOfRange(encoded, 32, 64));
+    }
+
+    @Test
+    public void blockHashesGoThroughTheHeader() {
+        HybridBlock block = new HybridBlock(PREV, 1, new ArrayList<>(), 0x1f00ffff);
+        block.setNonce(42);
+        byte[] full = PoWHeader.sha256().digest(block.newPOWHeader().encode(42));
+        assertEquals(HexFormat.of().formatHex(full), block.computeBlockHash(true));
+    }
+}
@@ -0,0 +1,85 @@
+package pt.tecnico.ulisboa.blockchain.blocks;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PoWTargetTest {
+    @Test
+    public void bitcoinGenesisTarget() {
+        BigInteger target = new BigInteger("00000000ffff0000000000000000000000000000000000000000000000000000", 16);
+        assertEquals(target, PoWTarget.fromCompact(0x1d00ffff));
+        assertEquals(0x1d00ffff, PoWTarget.toCompact(target));
+    }
+
+    @Test
+    public void smallExponents() {
+        assertEquals(BigInteger.valueOf(0x12), PoWTarget.fromCompact(0x01120000));
+        assertEquals(BigInteger.valueOf(0x1234), PoWTarget.fromCompact(0x02123400));
+        assertEquals(0x01120000, PoWTarget.toCompact(BigInteger.valueOf(0x12)));
+    }
+
+    @Test
+    public void mantissaSignBitMovesToTheExponent() {
+        // 0x80 would set the sign bit of a one-byte mantissa
+        assertEquals(0x02008000, PoWTarget.toCompact(BigInteger.valueOf(0x80)));
+        assertEquals(BigInteger.valueOf(0x80), PoWTarget.fromCompact(0x02008000));
+    }
+
+    @Test
+    public void roundTripNeverMakesTheTargetEasier() {
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            BigInteger target = new BigInteger(1 + random.nextInt(256), random).max(BigInteger.ONE);
+            int bits = PoWTarget.toCompact(target);
+            BigInteger decoded = PoWTarget.fromCompact(bits);
+            assertTrue(decoded.compareTo(target) <= 0);
+            // Only the bits below the 23-bit mantissa are lost
+            assertTrue(target.subtract(decoded).bitLength() <= Math.max(0, target.bitLength() - 15));
+            assertEquals(bits, PoWTarget.toCompact(decoded));
+        }
+    }
+
+    @Test
+    public void leadingZerosMatchTheOldHexDifficulty() {
+        byte[] target = PoWTarget.expand(PoWTarget.fromLeadingZeros(4));
+        assertEquals(PoWHeader.HASH_BYTES, target.length);
+        assertEquals(0, target[0]);
+        assertEquals(0, target[1]);
+        assertEquals((byte) 0xff, target[2]);
+
+        byte[] hash = new byte[PoWHeader.HASH_BYTES];
+        hash[2] = (byte) 0xf0;
+        assertTrue(PoWTarget.meets(hash, target));
+        hash[1] = 1;
+        assertFalse(PoWTarget.meets(hash, target));
+    }
+
+    @Test
+    public void meetsIsUnsigned() {
+        byte[] target = new byte[PoWHeader.HASH_BYTES];
+        target[0] = 0x7f;
+        byte[] hash = new byte[PoWHeader.HASH_BYTES];
+        hash[0] = (byte) 0x80;
+        assertFalse(PoWTarget.meets(hash, target));
+        assertTrue(PoWTarget.meets(target, target));
+    }
+
+    @Test
+    public void harderMeansSmallerTarget() {
+        assertTrue(PoWTarget.isAtLeastAsHard(PoWTarget.fromLeadingZeros(5), PoWTarget.fromLeadingZeros(4)));
+        assertFalse(PoWTarget.isAtLeastAsHard(PoWTarget.fromLeadingZeros(3), PoWTarget.fromLeadingZeros(4)));
+        assertArrayEquals(PoWTarget.expand(0x1d00ffff), PoWTarget.expand(PoWTarget.toCompact(PoWTarget.fromCompact(0x1d00ffff))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeCompactTargetIsRejected() {
+        PoWTarget.fromCompact(0x04923456);
+    }
+}
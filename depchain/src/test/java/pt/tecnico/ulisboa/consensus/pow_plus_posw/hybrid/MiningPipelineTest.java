@@ -0,0 +1,164 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.hybrid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
+import pt.tecnico.ulisboa.blockchain.blocks.PoWTarget;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.ProofScheme;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.VDFParameterRegistry;
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.posw.VDFParameters;
+import pt.tecnico.ulisboa.protocol.ClientReq;
+import pt.tecnico.ulisboa.protocol.TransferDepCoinReq;
+
+// Blocks mined with overlapping PoW and VDF form a valid chain; a head switch drops the rest
+public class MiningPipelineTest {
+    private static final long T = 1 << 16;
+
+    private static HybridConsensus consensus(int difficulty) throws Exception {
+        VDFParameters params = VDFParameterRegistry.load("blocks/vdf_params.json").withTimeParameter(T);
+        return new HybridConsensus(difficulty, params, ProofScheme.WESOLOWSKI);
+    }
+
+    private static TransferDepCoinReq tx(int n) {
+        return new TransferDepCoinReq(n, (long) n, "0x" + "0".repeat(39) + (n % 10), BigInteger.valueOf(n));
+    }
+
+    // A block mined elsewhere, as received
+    private static HybridBlock received(HybridBlock parent, int difficulty) {
+        HybridBlock block = new HybridBlock(parent.getLinkHash(), parent.getHeight() + 1, new ArrayList<>(), difficulty);
+        block.setHash(block.computeBlockHash());
+        return block;
+    }
+
+    // One transaction per block, numbered in the order they are taken
+    private static final class Source implements MiningPipeline.TransactionSource {
+        final AtomicInteger taken = new AtomicInteger();
+        final BlockingQueue<Integer> takes = new LinkedBlockingQueue<>();
+
+        @Override
+        public List<ClientReq> take() {
+            int n = taken.incrementAndGet();
+            takes.add(n);
+            return List.of(tx(n));
+        }
+    }
+
+    private static List<HybridBlock> mine(int depth, int count, List<Long> finalizedAt) throws Exception {
+        try (HybridConsensus consensus = consensus(PoWTarget.fromLeadingZeros(2))) {
+            BlockingQueue<HybridBlock> finalized = new LinkedBlockingQueue<>();
+            MiningPipeline pipeline = consensus.newPipeline(depth, new Source(), block -> {
+                finalizedAt.add(System.currentTimeMillis());
+                finalized.add(block);
+            });
+            HybridBlock genesis = new HybridBlock();
+            pipeline.follow(genesis, consensus.initialState());
+
+            List<HybridBlock> blocks = new ArrayList<>();
+            while (blocks.size() < count) {
+                blocks.add(finalized.poll(30, TimeUnit.SECONDS));
+            }
+            pipeline.stop();
+
+            ChainState state = consensus.initialState();
+            HybridBlock parent = genesis;
+            for (HybridBlock block : blocks) {
+                assertEquals(parent.getLinkHash(), block.getPrevHash());
+                assertEquals(parent.getHeight() + 1, (long) block.getHeight());
+                assertEquals(state.getTimeParameter(), block.getTimeParameter());
+                parent = block;
+                state = state.next(block);
+            }
+            boolean[] valid = consensus.validateBlocks(blocks, consensus.initialState());
+            for (int i = 0; i < valid.length; i++) {
+                assertTrue("block " + i, valid[i]);
+            }
+            return blocks;
+        }
+    }
+
+    @Test
+    public void pipelinedBlocksFormAValidChain() throws Exception {
+        List<Long> finalizedAt = new ArrayList<>();
+        List<HybridBlock> blocks = mine(1, 4, finalizedAt);
+        // Each block's PoW header was built before its parent's VDF was done
+        for (int i = 1; i < blocks.size(); i++) {
+            assertTrue("block " + i, blocks.get(i).getTimestamp() <= finalizedAt.get(i - 1));
+        }
+    }
+
+    @Test
+    public void depthZeroMinesSequentially() throws Exception {
+        List<Long> finalizedAt = new ArrayList<>();
+        List<HybridBlock> blocks = mine(0, 3, finalizedAt);
+        for (int i = 1; i < blocks.size(); i++) {
+            assertTrue("block " + i, blocks.get(i).getTimestamp() >= finalizedAt.get(i - 1));
+        }
+    }
+
+    @Test
+    public void anotherHeadStopsTheRunAndReturnsItsTransactions() throws Exception {
+        // No nonce meets this target, so the PoW only ends when the run is stopped
+        try (HybridConsensus consensus = consensus(PoWTarget.fromLeadingZeros(40))) {
+            Source source = new Source();
+            BlockingQueue<HybridBlock> finalized = new LinkedBlockingQueue<>();
+            MiningPipeline pipeline = consensus.newPipeline(1, source, finalized::add);
+            HybridBlock genesis = new HybridBlock();
+            assertEquals(List.of(), pipeline.follow(genesis, consensus.initialState()));
+            // Following the same head again keeps the run
+            assertEquals(List.of(), pipeline.follow(genesis, consensus.initialState()));
+            assertEquals(Integer.valueOf(1), source.takes.poll(5, TimeUnit.SECONDS));
+
+            HybridBlock other = received(genesis, PoWTarget.fromLeadingZeros(40));
+            long start = System.nanoTime();
+            List<ClientReq> dropped = pipeline.follow(other, consensus.initialState().next(other));
+            assertTrue((System.nanoTime() - start) / 1_000_000 < 2000);
+            assertEquals(List.of(tx(1)), dropped);
+
+            // The new run mines on `other`
+            assertEquals(Integer.valueOf(2), source.takes.poll(5, TimeUnit.SECONDS));
+            assertEquals(List.of(tx(2)), pipeline.stop());
+            assertNull(finalized.poll());
+        }
+    }
+
+    @Test
+    public void anotherHeadCancelsTheVDFsInFlight() throws Exception {
+        try (HybridConsensus consensus = consensus(PoWTarget.fromLeadingZeros(1))) {
+            CountDownLatch first = new CountDownLatch(1);
+            BlockingQueue<HybridBlock> finalized = new LinkedBlockingQueue<>();
+            MiningPipeline pipeline = consensus.newPipeline(1, new Source(), block -> {
+                first.countDown();
+                finalized.add(block);
+            });
+            HybridBlock genesis = new HybridBlock();
+            pipeline.follow(genesis, consensus.initialState());
+            assertTrue(first.await(30, TimeUnit.SECONDS));
+
+            // Mined blocks above the first one are either waiting for or running their VDF
+            HybridBlock head = finalized.take();
+            assertEquals(List.of(), pipeline.follow(head, consensus.initialState().next(head)));
+            HybridBlock other = received(genesis, PoWTarget.fromLeadingZeros(1));
+            List<ClientReq> dropped = pipeline.follow(other, consensus.initialState().next(other));
+            assertTrue(dropped.size() >= 1);
+            assertEquals(tx(2), dropped.get(0));
+
+            // Nothing from the old run shows up, only blocks mined on the new head
+            HybridBlock next = finalized.poll(30, TimeUnit.SECONDS);
+            pipeline.stop();
+            assertEquals(other.getLinkHash(), next.getPrevHash());
+        }
+    }
+}
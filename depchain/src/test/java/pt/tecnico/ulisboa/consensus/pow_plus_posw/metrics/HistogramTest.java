@@ -0,0 +1,47 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void bucketsAreCumulativeWhenWritten() {
+        Histogram histogram = new Histogram("h", "test", 1, 2, 4);
+        histogram.observe(0.5);
+        histogram.observe(1); // bounds are inclusive
+        histogram.observe(3);
+        histogram.observe(100);
+
+        StringBuilder out = new StringBuilder();
+        histogram.write(out);
+        String text = out.toString();
+        assertTrue(text.contains("# TYPE h histogram\n"));
+        assertTrue(text.contains("h_bucket{le=\"1.0\"} 2\n"));
+        assertTrue(text.contains("h_bucket{le=\"2.0\"} 2\n"));
+        assertTrue(text.contains("h_bucket{le=\"4.0\"} 3\n"));
+        assertTrue(text.contains("h_bucket{le=\"+Inf\"} 4\n"));
+        assertTrue(text.contains("h_sum 104.5\n"));
+        assertTrue(text.contains("h_count 4\n"));
+        assertEquals(4L, histogram.getCount());
+    }
+
+    @Test
+    public void boundsAreSorted() {
+        Histogram histogram = new Histogram("h", "test", 4, 1, 2);
+        histogram.observe(1.5);
+        StringBuilder out = new StringBuilder();
+        histogram.write(out);
+        assertTrue(out.toString().contains("h_bucket{le=\"1.0\"} 0\nh_bucket{le=\"2.0\"} 1\n"));
+    }
+
+    @Test
+    public void exponentialBuckets() {
+        double[] bounds = Histogram.exponentialBuckets(0.5, 2, 4);
+        assertEquals(4L, (long) bounds.length);
+        assertEquals(0.5, bounds[0], 0);
+        assertEquals(4.0, bounds[3], 0);
+    }
+}
@@ -0,0 +1,64 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class MetricsServerTest {
+
+    private static HttpURLConnection open(MetricsServer server, String method) throws IOException {
+        URI uri = URI.create("http://127.0.0.1:" + server.getPort() + "/metrics");
+        HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    @Test
+    public void recordingUpdatesTheMetrics() {
+        long hashes = ConsensusMetrics.POW_HASHES.get();
+        long failures = ConsensusMetrics.VDF_VERIFICATION_FAILURES.get();
+        long proofs = ConsensusMetrics.VDF_PROOF_SECONDS.getCount();
+
+        ConsensusMetrics.recordMining(1000, 500_000_000L);
+        ConsensusMetrics.recordProof(1 << 20, 2_000_000_000L);
+        ConsensusMetrics.recordVerification(1_000_000L, false);
+        ConsensusMetrics.recordVerification(1_000_000L, true);
+
+        assertEquals(hashes + 1000, ConsensusMetrics.POW_HASHES.get());
+        assertEquals(2000.0, ConsensusMetrics.POW_HASH_RATE.get(), 1e-9);
+        assertEquals((1 << 20) / 2.0, ConsensusMetrics.VDF_SQUARING_RATE.get(), 1e-9);
+        assertEquals(failures + 1, ConsensusMetrics.VDF_VERIFICATION_FAILURES.get());
+        assertEquals(proofs + 1, ConsensusMetrics.VDF_PROOF_SECONDS.getCount());
+    }
+
+    @Test
+    public void servesTheScrape() throws IOException {
+        ConsensusMetrics.recordMining(10, 1_000_000L);
+        try (MetricsServer server = new MetricsServer(0)) {
+            HttpURLConnection connection = open(server, "GET");
+            assertEquals(200L, (long) connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+            String body;
+            try (InputStream in = connection.getInputStream()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            assertTrue(body.contains("# TYPE hybrid_pow_hashes_total counter\n"));
+            assertTrue(body.contains("\nhybrid_pow_hashes_total " + ConsensusMetrics.POW_HASHES.get() + "\n"));
+            assertTrue(body.contains("# TYPE hybrid_vdf_proof_seconds histogram\n"));
+        }
+    }
+
+    @Test
+    public void onlyGetIsAllowed() throws IOException {
+        try (MetricsServer server = new MetricsServer(0)) {
+            assertEquals(405L, (long) open(server, "POST").getResponseCode());
+        }
+    }
+}
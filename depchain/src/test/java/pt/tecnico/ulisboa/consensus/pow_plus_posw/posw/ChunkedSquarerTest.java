@@ -0,0 +1,91 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import pt.tecnico.ulisboa.Config;
+
+// Chunked modPow runs against squaring one step at a time
+public class ChunkedSquarerTest {
+    private static final int CHUNK = 1 << 16;
+
+    private static BigInteger modulus;
+    private static BigInteger x;
+
+    @BeforeClass
+    public static void loadParameters() {
+        VDFParameters params = VDFParameterRegistry.load("blocks/vdf_params.json");
+        modulus = params.getModulus();
+        x = new FiatShamirChallenge(params).hashToGroup("squarer".getBytes());
+    }
+
+    private static BigInteger reference(BigInteger value, long count) {
+        for (long i = 0; i < count; i++) {
+            value = value.multiply(value).mod(modulus);
+        }
+        return value;
+    }
+
+    @Test
+    public void matchesOneSquaringAtATime() {
+        ChunkedSquarer squarer = new ChunkedSquarer(modulus);
+        for (long count : new long[] {0, 1, 2, 1000, CHUNK - 1, CHUNK, CHUNK + 1, 2L * CHUNK + 17}) {
+            assertEquals("count " + count, reference(x, count), squarer.square(x, count));
+        }
+    }
+
+    @Test
+    public void runsAddUp() {
+        ChunkedSquarer squarer = new ChunkedSquarer(modulus);
+        squarer.load(x);
+        squarer.squareInPlace(CHUNK - 3);
+        squarer.squareInPlace(10, () -> false);
+        squarer.squareInPlace(CHUNK + 5);
+        assertEquals(reference(x, 2L * CHUNK + 12), squarer.get());
+    }
+
+    @Test
+    public void inputIsReducedFirst() {
+        ChunkedSquarer squarer = new ChunkedSquarer(modulus);
+        assertEquals(squarer.square(x, 7), squarer.square(x.add(modulus.multiply(BigInteger.TWO)), 7));
+    }
+
+    @Test
+    public void stateSurvivesExportAndImport() {
+        ChunkedSquarer squarer = new ChunkedSquarer(modulus);
+        squarer.load(x);
+        squarer.squareInPlace(500);
+        int[] state = new int[squarer.limbs()];
+        squarer.exportState(state);
+
+        ChunkedSquarer resumed = new ChunkedSquarer(modulus);
+        resumed.importState(state);
+        resumed.squareInPlace(500);
+        assertEquals(reference(x, 1000), resumed.get());
+    }
+
+    @Test
+    public void cancellationIsSeenWithinOneCheckInterval() {
+        ChunkedSquarer squarer = new ChunkedSquarer(modulus);
+        squarer.load(x);
+        AtomicInteger checks = new AtomicInteger();
+        try {
+            squarer.squareInPlace(100 * Config.VDF_CANCEL_CHECK_INTERVAL, () -> checks.incrementAndGet() > 3);
+            throw new AssertionError("Squaring was not cancelled");
+        } catch (CancellationException e) {
+            // Three intervals done, the fourth check stops it
+            assertEquals(reference(x, 3 * Config.VDF_CANCEL_CHECK_INTERVAL), squarer.get());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void evenModulusIsRejected() {
+        new ChunkedSquarer(modulus.add(BigInteger.ONE));
+    }
+}
@@ -0,0 +1,179 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import pt.tecnico.ulisboa.Config;
+
+// A lost race stops the prover and drops its snapshot; a shutdown keeps it
+public class FinalizationServiceTest {
+    private static final byte[] INPUT = "finalization".getBytes();
+
+    // Squares until cancelled, or until `release` opens and then returns regardless
+    private static final class FakeProver implements VDFProver {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger discarded = new AtomicInteger();
+        final boolean ignoreCancellation;
+
+        FakeProver(boolean ignoreCancellation) {
+            this.ignoreCancellation = ignoreCancellation;
+        }
+
+        @Override
+        public SequentialProof computeVDF(byte[] input, BooleanSupplier cancelled) {
+            started.countDown();
+            try {
+                while (!release.await(1, TimeUnit.MILLISECONDS)) {
+                    if (!ignoreCancellation && cancelled.getAsBoolean()) {
+                        throw new CancellationException("cancelled");
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return new SequentialProof(BigInteger.ONE, List.of(), 1);
+        }
+
+        @Override
+        public void discard(byte[] input) {
+            discarded.incrementAndGet();
+        }
+
+        @Override
+        public ProofScheme getScheme() {
+            return ProofScheme.PIETRZAK;
+        }
+    }
+
+    // Waits until the worker is done with the current submission
+    private static void drain(FinalizationService service, VDFProver prover) {
+        service.submit(INPUT, prover, (proof, nanos) -> {}).join();
+    }
+
+    private static VDFProver instant() {
+        return new VDFProver() {
+            @Override
+            public SequentialProof computeVDF(byte[] input, BooleanSupplier cancelled) {
+                return new SequentialProof(BigInteger.ONE, List.of(), 1);
+            }
+
+            @Override
+            public ProofScheme getScheme() {
+                return ProofScheme.PIETRZAK;
+            }
+        };
+    }
+
+    @Test
+    public void completedProofRunsTheCallbackFirst() {
+        FakeProver prover = new FakeProver(false);
+        FinalizationService service = new FinalizationService(prover);
+        AtomicReference<SequentialProof> seen = new AtomicReference<>();
+        CompletableFuture<SequentialProof> future = service.submit(INPUT, prover, (proof, nanos) -> seen.set(proof));
+        prover.release.countDown();
+        SequentialProof proof = future.join();
+        assertSame(proof, seen.get());
+        assertEquals(0, prover.discarded.get());
+        service.close();
+    }
+
+    @Test
+    public void cancellingARunningProofDiscardsIt() throws InterruptedException {
+        FakeProver prover = new FakeProver(false);
+        FinalizationService service = new FinalizationService(prover);
+        CompletableFuture<SequentialProof> future = service.submit(INPUT, prover, (proof, nanos) -> {});
+        prover.started.await();
+        future.cancel(false);
+        drain(service, instant());
+        assertEquals(1, prover.discarded.get());
+        service.close();
+    }
+
+    @Test
+    public void cancellingAQueuedProofDiscardsIt() throws InterruptedException {
+        FakeProver running = new FakeProver(false);
+        FakeProver queued = new FakeProver(false);
+        FinalizationService service = new FinalizationService(running);
+        service.submit(INPUT, running, (proof, nanos) -> {});
+        CompletableFuture<SequentialProof> future = service.submit(INPUT, queued, (proof, nanos) -> {});
+        running.started.await();
+        future.cancel(false);
+        running.release.countDown();
+        drain(service, instant());
+        assertEquals(1, queued.discarded.get());
+        assertEquals(1, queued.started.getCount()); // never ran
+        service.close();
+    }
+
+    @Test
+    public void cancellingAsTheProofCompletesDiscardsIt() throws InterruptedException {
+        // The prover does not see the cancellation and returns a proof anyway
+        FakeProver prover = new FakeProver(true);
+        FinalizationService service = new FinalizationService(prover);
+        CompletableFuture<SequentialProof> future = service.submit(INPUT, prover, (proof, nanos) -> {
+            throw new AssertionError("Cancelled proof was accepted");
+        });
+        prover.started.await();
+        future.cancel(false);
+        prover.release.countDown();
+        drain(service, instant());
+        assertEquals(1, prover.discarded.get());
+        service.close();
+    }
+
+    @Test
+    public void closeKeepsWhatIsNeededToResume() throws InterruptedException {
+        FakeProver prover = new FakeProver(false);
+        FinalizationService service = new FinalizationService(prover);
+        CompletableFuture<SequentialProof> future = service.submit(INPUT, prover, (proof, nanos) -> {});
+        prover.started.await();
+        service.close();
+        assertTrue(future.isCancelled());
+        // The worker still has to notice
+        Thread.sleep(50);
+        assertEquals(0, prover.discarded.get());
+    }
+
+    @Test
+    public void lostRaceDeletesTheSnapshot() throws Exception {
+        Path dir = Files.createTempDirectory("vdf-snapshots");
+        VDFParameters params = VDFParameterRegistry.load("blocks/vdf_params.json")
+                .withTimeParameter(4 * Config.VDF_SNAPSHOT_INTERVAL);
+        VDFEngine prover = new VDFEngine(params, 2, null, dir);
+        FinalizationService service = new FinalizationService(prover);
+
+        CompletableFuture<SequentialProof> future = service.submit(INPUT, prover, (proof, nanos) -> {});
+        while (files(dir) == 0) {
+            Thread.sleep(10);
+        }
+        future.cancel(false);
+        drain(service, instant());
+        assertEquals(0, files(dir));
+        service.close();
+        Files.delete(dir);
+    }
+
+    private static long files(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+}
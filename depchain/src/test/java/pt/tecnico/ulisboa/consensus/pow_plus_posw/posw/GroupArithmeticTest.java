@@ -0,0 +1,94 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Test;
+
+// The limb-based Jacobi symbol against the textbook BigInteger algorithm
+public class GroupArithmeticTest {
+    private static final BigInteger THREE = BigInteger.valueOf(3);
+    private static final BigInteger FOUR = BigInteger.valueOf(4);
+    private static final BigInteger FIVE = BigInteger.valueOf(5);
+    private static final BigInteger EIGHT = BigInteger.valueOf(8);
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void smallValues() {
+        assertEquals(1, GroupArithmetic.jacobi(BigInteger.ONE, BigInteger.valueOf(3)));
+        assertEquals(-1, GroupArithmetic.jacobi(BigInteger.valueOf(2), BigInteger.valueOf(3)));
+        assertEquals(0, GroupArithmetic.jacobi(BigInteger.valueOf(3), BigInteger.valueOf(9)));
+        assertEquals(-1, GroupArithmetic.jacobi(BigInteger.valueOf(1001), BigInteger.valueOf(9907)));
+        assertEquals(1, GroupArithmetic.jacobi(BigInteger.valueOf(19), BigInteger.valueOf(45)));
+    }
+
+    @Test
+    public void matchesReferenceOnRandomOperands() {
+        // Up to several limbs, so carries across words and multi-word shifts are exercised
+        for (int bits : new int[] {8, 31, 32, 33, 64, 65, 200, 1024, 2048}) {
+            for (int i = 0; i < 200; i++) {
+                BigInteger n = new BigInteger(bits, random).setBit(0);
+                if (n.equals(BigInteger.ONE)) {
+                    continue;
+                }
+                BigInteger a = new BigInteger(bits + 16, random);
+                assertEquals(a + " / " + n, reference(a, n), GroupArithmetic.jacobi(a, n));
+            }
+        }
+    }
+
+    @Test
+    public void manyTrailingZeros() {
+        BigInteger n = BigInteger.ONE.shiftLeft(521).subtract(BigInteger.ONE); // prime
+        for (int shift : new int[] {1, 31, 32, 33, 64, 100}) {
+            BigInteger a = BigInteger.valueOf(12345).shiftLeft(shift);
+            assertEquals("shift " + shift, reference(a, n), GroupArithmetic.jacobi(a, n));
+        }
+    }
+
+    @Test
+    public void squaresAreSignedQuadraticResidues() {
+        VDFParameters params = VDFParameterRegistry.load("blocks/vdf_params.json");
+        BigInteger n = params.getModulus();
+        for (int i = 0; i < 50; i++) {
+            BigInteger x = new BigInteger(n.bitLength() - 1, random).add(BigInteger.TWO);
+            BigInteger square = x.multiply(x).mod(n);
+            assertTrue(GroupArithmetic.isInSignedQuadraticResidues(square, params));
+            assertTrue(GroupArithmetic.isInSignedQuadraticResidues(square, n));
+        }
+        assertFalse(GroupArithmetic.isInSignedQuadraticResidues(BigInteger.ZERO, params));
+        assertFalse(GroupArithmetic.isInSignedQuadraticResidues(n, params));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void evenModulusIsRejected() {
+        GroupArithmetic.jacobi(BigInteger.ONE, BigInteger.valueOf(10));
+    }
+
+    private static int reference(BigInteger a, BigInteger n) {
+        a = a.mod(n);
+        int result = 1;
+        while (a.signum() != 0) {
+            while (!a.testBit(0)) {
+                a = a.shiftRight(1);
+                BigInteger r = n.mod(EIGHT);
+                if (r.equals(THREE) || r.equals(FIVE)) {
+                    result = -result;
+                }
+            }
+            BigInteger t = a;
+            a = n;
+            n = t;
+            if (a.mod(FOUR).equals(THREE) && n.mod(FOUR).equals(THREE)) {
+                result = -result;
+            }
+            a = a.mod(n);
+        }
+        return n.equals(BigInteger.ONE) ? result : 0;
+    }
+}
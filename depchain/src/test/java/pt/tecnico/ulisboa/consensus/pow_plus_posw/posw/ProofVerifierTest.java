@@ -0,0 +1,81 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+// Every part of a Pietrzak proof is bound by the verifier
+public class ProofVerifierTest {
+    private static final byte[] INPUT = "verifier".getBytes();
+
+    private static VDFParameters params;
+    private static ProofVerifier verifier;
+    private static SequentialProof proof;
+
+    @BeforeClass
+    public static void prove() {
+        params = VDFParameterRegistry.load("blocks/vdf_params.json").withTimeParameter(1000);
+        verifier = new ProofVerifier(params);
+        proof = new VDFEngine(params, 0).computeVDF(INPUT);
+    }
+
+    private static SequentialProof withElements(List<BigInteger> elements) {
+        return new SequentialProof(proof.getOutput(), elements, proof.getTimeParameter());
+    }
+
+    @Test
+    public void honestProofVerifies() {
+        assertTrue(verifier.verifyVDFProof(INPUT, proof));
+    }
+
+    @Test
+    public void tamperedOutputIsRejected() {
+        BigInteger y = proof.getOutput().multiply(BigInteger.valueOf(4)).mod(params.getModulus());
+        assertFalse(verifier.verifyVDFProof(INPUT, new SequentialProof(y, proof.getProofElements(), 1000)));
+    }
+
+    @Test
+    public void tamperedElementIsRejected() {
+        List<BigInteger> elements = new ArrayList<>(proof.getProofElements());
+        BigInteger mu = elements.get(3);
+        elements.set(3, mu.multiply(mu).mod(params.getModulus()));
+        assertFalse(verifier.verifyVDFProof(INPUT, withElements(elements)));
+    }
+
+    @Test
+    public void elementOutsideSignedResiduesIsRejected() {
+        // N - μ is the same element of QR⁺_N, but not its reduced representative
+        List<BigInteger> elements = new ArrayList<>(proof.getProofElements());
+        elements.set(0, params.getModulus().subtract(elements.get(0)));
+        assertFalse(verifier.verifyVDFProof(INPUT, withElements(elements)));
+    }
+
+    @Test
+    public void missingOrExtraElementsAreRejected() {
+        List<BigInteger> elements = proof.getProofElements();
+        assertFalse(verifier.verifyVDFProof(INPUT, withElements(elements.subList(0, elements.size() - 1))));
+
+        List<BigInteger> extra = new ArrayList<>(elements);
+        extra.add(elements.get(0));
+        assertFalse(verifier.verifyVDFProof(INPUT, withElements(extra)));
+    }
+
+    @Test
+    public void otherTimeParameterIsRejected() {
+        SequentialProof shorter = new SequentialProof(proof.getOutput(), proof.getProofElements(), 999);
+        assertFalse(verifier.verifyVDFProof(INPUT, shorter));
+    }
+
+    @Test
+    public void wesolowskiProofIsNotAPietrzakProof() {
+        SequentialProof other = new SequentialProof(proof.getOutput(), proof.getProofElements(), 1000,
+                ProofScheme.WESOLOWSKI);
+        assertFalse(verifier.verifyVDFProof(INPUT, other));
+    }
+}
@@ -0,0 +1,43 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import pt.tecnico.ulisboa.consensus.pow_plus_posw.metrics.ConsensusMetrics;
+
+public class VDFCalibratorTest {
+    private final VDFParameters params = VDFParameterRegistry.load("blocks/vdf_params.json");
+
+    @Test
+    public void anythingPassesUntilCalibrated() {
+        VDFCalibrator calibrator = new VDFCalibrator(params, 1 << 10, 8);
+        assertTrue(calibrator.isPlausible(1L << 30, 1));
+        assertTrue(calibrator.isPlausible(1L << 16, 0));
+    }
+
+    @Test
+    public void boundsTheClaimedRateByTheLocalOne() {
+        VDFCalibrator calibrator = new VDFCalibrator(params, 1 << 12, 8);
+        double rate = calibrator.calibrate();
+        assertTrue(rate > 0);
+        assertEquals(rate, calibrator.getSquaringRate(), 0);
+        assertEquals(rate, ConsensusMetrics.VDF_LOCAL_SQUARING_RATE.get(), 0);
+
+        long T = 1L << 20;
+        long honest = (long) Math.ceil(T * 1000 / rate); // ms at the local rate
+        assertTrue(calibrator.isPlausible(T, honest));
+        assertTrue(calibrator.isPlausible(T, 10 * honest));
+        // Up to 8 times faster
+        assertTrue(calibrator.isPlausible(T, (long) Math.ceil(honest / 7.9)));
+        assertFalse(calibrator.isPlausible(T, (long) Math.floor(T * 1000 / (rate * 8.1))));
+        assertFalse(calibrator.isPlausible(T, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsAPositiveBenchmark() {
+        new VDFCalibrator(params, 0, 8);
+    }
+}
@@ -0,0 +1,56 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+// The checkpoint fold must give exactly the μᵢ the plain prover squares for
+public class VDFEngineTest {
+    private static VDFParameters params;
+
+    @BeforeClass
+    public static void loadParameters() {
+        params = VDFParameterRegistry.load("blocks/vdf_params.json").withTimeParameter(1 << 12);
+    }
+
+    @Test
+    public void everyCheckpointDepthGivesThePlainProof() {
+        byte[] input = "checkpoints".getBytes();
+        SequentialProof plain = new VDFEngine(params, 0).computeVDF(input);
+        assertTrue(new ProofVerifier(params).verifyVDFProof(input, plain));
+
+        for (int depth = 1; depth <= 12; depth++) {
+            SequentialProof folded = new VDFEngine(params, depth).computeVDF(input);
+            assertEquals("depth " + depth, plain.getOutput(), folded.getOutput());
+            assertEquals("depth " + depth, plain.getProofElements(), folded.getProofElements());
+        }
+    }
+
+    @Test
+    public void parallelFoldGivesThePlainProof() {
+        byte[] input = "parallel".getBytes();
+        SequentialProof plain = new VDFEngine(params, 0).computeVDF(input);
+        SequentialProof folded = new VDFEngine(params, 6, ForkJoinPool.commonPool()).computeVDF(input);
+        assertEquals(plain.getProofElements(), folded.getProofElements());
+    }
+
+    @Test
+    public void oddTimeParameterFallsBackToSquaring() {
+        // 12293 has no factor 2, so no checkpoint lands on a segment boundary
+        VDFParameters odd = params.withTimeParameter(12293);
+        byte[] input = "odd".getBytes();
+        SequentialProof proof = new VDFEngine(odd, 6).computeVDF(input);
+        assertTrue(new ProofVerifier(odd).verifyVDFProof(input, proof));
+    }
+
+    @Test
+    public void proofDoesNotVerifyForAnotherInput() {
+        SequentialProof proof = new VDFEngine(params, 4).computeVDF("one".getBytes());
+        assertFalse(new ProofVerifier(params).verifyVDFProof("two".getBytes(), proof));
+    }
+}
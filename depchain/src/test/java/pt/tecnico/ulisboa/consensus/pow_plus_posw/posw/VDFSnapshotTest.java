@@ -0,0 +1,167 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import pt.tecnico.ulisboa.Config;
+
+// Snapshots survive a torn write and let a restarted prover finish the same proof
+public class VDFSnapshotTest {
+    private static final byte[] INPUT = "snapshot".getBytes();
+    private static final int SEGMENTS = 4;
+
+    private static VDFParameters params;
+    private static BigInteger x;
+    private Path dir;
+
+    @BeforeClass
+    public static void loadParameters() {
+        params = VDFParameterRegistry.load("blocks/vdf_params.json").withTimeParameter(64);
+        x = new FiatShamirChallenge(params).hashToGroup(INPUT);
+    }
+
+    @Before
+    public void createDirectory() throws IOException {
+        dir = Files.createTempDirectory("vdf-snapshots");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.toList();
+        }
+    }
+
+    private static BigInteger squared(long count) {
+        return new ChunkedSquarer(params).square(x, count);
+    }
+
+    // Squares x to 20 and 40 (stride 16), snapshotting both
+    private void saveTwice(ChunkedSquarer squarer) {
+        BigInteger[] checkpoints = new BigInteger[SEGMENTS + 1];
+        checkpoints[0] = x;
+        try (VDFSnapshot snapshot = VDFSnapshot.open(dir, params, INPUT, x, SEGMENTS, squarer.limbs())) {
+            assertEquals(0, snapshot.resume(squarer, checkpoints));
+            squarer.load(x);
+            squarer.squareInPlace(16);
+            checkpoints[1] = squarer.get();
+            squarer.squareInPlace(4);
+            snapshot.save(20, squarer, checkpoints);
+            squarer.squareInPlace(12);
+            checkpoints[2] = squarer.get();
+            squarer.squareInPlace(8);
+            snapshot.save(40, squarer, checkpoints);
+        }
+    }
+
+    @Test
+    public void resumesFromTheNewestSlot() {
+        ChunkedSquarer squarer = new ChunkedSquarer(params);
+        saveTwice(squarer);
+
+        ChunkedSquarer resumed = new ChunkedSquarer(params);
+        BigInteger[] checkpoints = new BigInteger[SEGMENTS + 1];
+        try (VDFSnapshot snapshot = VDFSnapshot.open(dir, params, INPUT, x, SEGMENTS, resumed.limbs())) {
+            assertEquals(40, snapshot.resume(resumed, checkpoints));
+        }
+        assertEquals(squared(40), resumed.get());
+        assertEquals(squared(16), checkpoints[1]);
+        assertEquals(squared(32), checkpoints[2]);
+        assertNull(checkpoints[3]);
+    }
+
+    @Test
+    public void tornSlotFallsBackToThePreviousOne() throws IOException {
+        ChunkedSquarer squarer = new ChunkedSquarer(params);
+        saveTwice(squarer);
+
+        // Flip a byte of the value in the slot of the second save, as a write cut short would
+        Path file = files().get(0);
+        int headerBytes = 8 + 32 + 12 + 8 + 4 + INPUT.length;
+        int slotBytes = 8 + 4 * squarer.limbs() + 8;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(headerBytes);
+            long slot = raf.readLong() == 40 ? headerBytes : headerBytes + slotBytes;
+            long offset = slot + 8 + 10;
+            raf.seek(offset);
+            int b = raf.read();
+            raf.seek(offset);
+            raf.write(b ^ 0xFF);
+        }
+
+        ChunkedSquarer resumed = new ChunkedSquarer(params);
+        BigInteger[] checkpoints = new BigInteger[SEGMENTS + 1];
+        try (VDFSnapshot snapshot = VDFSnapshot.open(dir, params, INPUT, x, SEGMENTS, resumed.limbs())) {
+            assertEquals(20, snapshot.resume(resumed, checkpoints));
+        }
+        assertEquals(squared(20), resumed.get());
+        assertEquals(squared(16), checkpoints[1]);
+        assertNull(checkpoints[2]);
+    }
+
+    @Test
+    public void pendingListsUnfinishedChainsAndDropsTheRest() throws IOException {
+        saveTwice(new ChunkedSquarer(params));
+        Files.write(dir.resolve("junk.snap"), new byte[] {1, 2, 3});
+
+        List<VDFSnapshot.Pending> pending = VDFSnapshot.pending(dir, Config.VDF_SNAPSHOT_MAX_AGE);
+        assertEquals(1, pending.size());
+        assertArrayEquals(INPUT, pending.get(0).input());
+        assertEquals(64, pending.get(0).timeParameter());
+        assertEquals(1, files().size());
+
+        // Too old to be resumed
+        Files.setLastModifiedTime(files().get(0), FileTime.fromMillis(0));
+        assertTrue(VDFSnapshot.pending(dir, Config.VDF_SNAPSHOT_MAX_AGE).isEmpty());
+        assertTrue(files().isEmpty());
+    }
+
+    @Test
+    public void cancelledProofResumesToTheSameProof() throws IOException {
+        long T = 2 * Config.VDF_SNAPSHOT_INTERVAL;
+        VDFParameters slow = params.withTimeParameter(T);
+        SequentialProof expected = new VDFEngine(slow, 2).computeVDF(INPUT);
+
+        // Cancelled once a few snapshots are on disk
+        AtomicInteger checks = new AtomicInteger();
+        long stopAt = (Config.VDF_SNAPSHOT_INTERVAL + T / 4) / Config.VDF_CANCEL_CHECK_INTERVAL;
+        try {
+            new VDFEngine(slow, 2, null, dir).computeVDF(INPUT, () -> checks.incrementAndGet() > stopAt);
+            throw new AssertionError("Proof was not cancelled");
+        } catch (CancellationException e) {
+            assertEquals(1, files().size());
+        }
+
+        SequentialProof resumed = new VDFEngine(slow, 2, null, dir).computeVDF(INPUT);
+        assertEquals(expected.getOutput(), resumed.getOutput());
+        assertEquals(expected.getProofElements(), resumed.getProofElements());
+        assertTrue(files().isEmpty());
+    }
+}
@@ -0,0 +1,97 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.math.BigInteger;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+// verifyAll must give exactly what verifying each proof on its own gives
+public class VDFVerifierTest {
+    private static final int COUNT = 12;
+
+    private static VDFParameters params;
+
+    @BeforeClass
+    public static void loadParameters() {
+        params = VDFParameterRegistry.load("blocks/vdf_params.json").withTimeParameter(1 << 10);
+    }
+
+    // Proofs of "block i", with different T, odd ones and T = 1 and 2 included
+    private static List<Map.Entry<byte[], SequentialProof>> proofs(ProofScheme scheme) {
+        long[] times = {1, 2, 3, 1 << 10, 1000, 777};
+        List<Map.Entry<byte[], SequentialProof>> proofs = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            byte[] input = ("block " + i).getBytes();
+            VDFProver prover = scheme == ProofScheme.PIETRZAK
+                    ? new VDFEngine(params.withTimeParameter(times[i % times.length]), 2)
+                    : new WesolowskiEngine(params.withTimeParameter(times[i % times.length]));
+            proofs.add(new AbstractMap.SimpleImmutableEntry<>(input, prover.computeVDF(input)));
+        }
+        return proofs;
+    }
+
+    private static boolean[] verifyEach(VDFVerifier verifier, List<Map.Entry<byte[], SequentialProof>> proofs) {
+        boolean[] results = new boolean[proofs.size()];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = verifier.verifyVDFProof(proofs.get(i).getKey(), proofs.get(i).getValue());
+        }
+        return results;
+    }
+
+    private static void checkScheme(ProofScheme scheme) {
+        VDFVerifier verifier = scheme.newVerifier(params);
+        List<Map.Entry<byte[], SequentialProof>> proofs = proofs(scheme);
+
+        boolean[] allValid = new boolean[COUNT];
+        Arrays.fill(allValid, true);
+        assertArrayEquals(allValid, verifier.verifyAll(proofs));
+
+        // One proof for the wrong input, one with a tampered output, one of the other scheme
+        SequentialProof second = proofs.get(1).getValue();
+        BigInteger y = second.getOutput().multiply(BigInteger.valueOf(4)).mod(params.getModulus());
+        proofs.set(1, new AbstractMap.SimpleImmutableEntry<>(proofs.get(1).getKey(),
+                new SequentialProof(y, second.getProofElements(), second.getTimeParameter(), scheme)));
+        proofs.set(4, new AbstractMap.SimpleImmutableEntry<>("another block".getBytes(), proofs.get(4).getValue()));
+        ProofScheme other = scheme == ProofScheme.PIETRZAK ? ProofScheme.WESOLOWSKI : ProofScheme.PIETRZAK;
+        proofs.set(7, proofs(other).get(7));
+
+        boolean[] expected = verifyEach(verifier, proofs);
+        assertFalse(expected[1]);
+        assertFalse(expected[4]);
+        assertFalse(expected[7]);
+        assertEquals(COUNT - 3, count(expected));
+        assertArrayEquals(expected, verifier.verifyAll(proofs));
+    }
+
+    private static int count(boolean[] results) {
+        int count = 0;
+        for (boolean result : results) {
+            count += result ? 1 : 0;
+        }
+        return count;
+    }
+
+    @Test
+    public void pietrzakProofs() {
+        checkScheme(ProofScheme.PIETRZAK);
+    }
+
+    @Test
+    public void wesolowskiProofs() {
+        checkScheme(ProofScheme.WESOLOWSKI);
+    }
+
+    @Test
+    public void noProofs() {
+        assertEquals(0, new ProofVerifier(params).verifyAll(List.of()).length);
+    }
+}
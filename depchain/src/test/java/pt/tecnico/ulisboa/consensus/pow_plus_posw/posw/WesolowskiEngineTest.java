@@ -0,0 +1,88 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.posw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import pt.tecnico.ulisboa.Config;
+
+// Wesolowski proofs round-trip through the verifier, and nothing in them can be changed
+public class WesolowskiEngineTest {
+    private static final byte[] INPUT = "wesolowski".getBytes();
+
+    private static VDFParameters params;
+    private static SequentialProof proof;
+
+    @BeforeClass
+    public static void prove() {
+        params = VDFParameterRegistry.load("blocks/vdf_params.json").withTimeParameter(5000);
+        proof = new WesolowskiEngine(params).computeVDF(INPUT);
+    }
+
+    private static boolean verify(byte[] input, SequentialProof proof) {
+        return new WesolowskiVerifier(params).verifyVDFProof(input, proof);
+    }
+
+    @Test
+    public void roundTripsForAnyTimeParameter() {
+        // Within one chunk, on chunk boundaries and across several
+        long stride = Config.VDF_CANCEL_CHECK_INTERVAL;
+        for (long T : new long[] {1, 2, 3, stride - 1, stride, stride + 1, 3 * stride + 5}) {
+            VDFParameters timed = params.withTimeParameter(T);
+            SequentialProof proof = new WesolowskiEngine(timed).computeVDF(INPUT);
+            assertEquals(ProofScheme.WESOLOWSKI, proof.getScheme());
+            assertEquals(T, proof.getTimeParameter());
+            assertTrue("T = " + T, new WesolowskiVerifier(timed).verifyVDFProof(INPUT, proof));
+        }
+    }
+
+    @Test
+    public void proofIsTheQuotientExponentiation() {
+        // π = x^⌊2^T/ℓ⌋ computed directly, T small enough for the quotient to fit in memory
+        FiatShamirChallenge challenge = new FiatShamirChallenge(params);
+        BigInteger x = challenge.hashToSquare(INPUT);
+        BigInteger N = params.getModulus();
+        BigInteger y = x.modPow(BigInteger.ONE.shiftLeft(5000), N);
+        BigInteger l = challenge.computePrime(x, 5000, y);
+
+        assertEquals(y, proof.getOutput());
+        assertEquals(x.modPow(BigInteger.ONE.shiftLeft(5000).divide(l), N), proof.getProofElements().get(0));
+    }
+
+    @Test
+    public void tamperedProofIsRejected() {
+        BigInteger N = params.getModulus();
+        BigInteger y = proof.getOutput();
+        BigInteger pi = proof.getProofElements().get(0);
+        BigInteger four = BigInteger.valueOf(4);
+
+        assertTrue(verify(INPUT, proof));
+        assertFalse(verify(INPUT, new SequentialProof(y, List.of(pi.multiply(four).mod(N)), 5000, ProofScheme.WESOLOWSKI)));
+        assertFalse(verify(INPUT, new SequentialProof(y.multiply(four).mod(N), List.of(pi), 5000, ProofScheme.WESOLOWSKI)));
+        assertFalse(verify(INPUT, new SequentialProof(y, List.of(N.subtract(pi)), 5000, ProofScheme.WESOLOWSKI)));
+        assertFalse(verify(INPUT, new SequentialProof(y, List.of(pi), 4999, ProofScheme.WESOLOWSKI)));
+        assertFalse(verify(INPUT, new SequentialProof(y, List.of(pi, pi), 5000, ProofScheme.WESOLOWSKI)));
+        assertFalse(verify(INPUT, new SequentialProof(y, List.of(pi), 5000, ProofScheme.PIETRZAK)));
+        assertFalse(verify("another input".getBytes(), proof));
+    }
+
+    @Test
+    public void proofSizeIsItsEncoding() {
+        assertEquals(proof.encode().length, proof.getProofSize());
+        SequentialProof pietrzak = new VDFEngine(params, 2).computeVDF(INPUT);
+        assertEquals(pietrzak.encode().length, pietrzak.getProofSize());
+        assertTrue(proof.getProofSize() < pietrzak.getProofSize());
+    }
+
+    @Test(expected = CancellationException.class)
+    public void cancellationStopsTheProver() {
+        new WesolowskiEngine(params.withTimeParameter(1 << 20)).computeVDF(INPUT, () -> true);
+    }
+}
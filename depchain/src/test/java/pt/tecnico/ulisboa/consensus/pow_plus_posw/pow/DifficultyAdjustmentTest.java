@@ -0,0 +1,157 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.pow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import pt.tecnico.ulisboa.Config;
+import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
+import pt.tecnico.ulisboa.blockchain.blocks.PoWTarget;
+
+public class DifficultyAdjustmentTest {
+    private static final long BLOCK_TIME = 1000;
+    private static final int INITIAL = PoWTarget.fromLeadingZeros(4);
+
+    // Block keeps its own creation time, so the test's clock goes in through the getter
+    private static HybridBlock block(long time, int difficulty) {
+        return new HybridBlock("prev", 1, new ArrayList<>(), difficulty) {
+            @Override
+            public long getTimestamp() {
+                return time;
+            }
+        };
+    }
+
+    // Feeds blocks `interval` ms apart, each with the difficulty the previous ones set
+    private static DifficultyAdjustment run(int blocks, long interval) {
+        DifficultyAdjustment adjustment = new DifficultyAdjustment(BLOCK_TIME, 10, INITIAL);
+        long time = 0;
+        for (int i = 0; i < blocks; i++) {
+            adjustment = adjustment.next(block(time, adjustment.getNextDifficulty()));
+            time += interval;
+        }
+        return adjustment;
+    }
+
+    private static double ratio(int difficulty) {
+        return PoWTarget.fromCompact(difficulty).doubleValue() / PoWTarget.fromCompact(INITIAL).doubleValue();
+    }
+
+    @Test
+    public void onTimeBlocksKeepTheDifficulty() {
+        assertEquals(1.0, ratio(run(30, BLOCK_TIME).getNextDifficulty()), 0.001);
+    }
+
+    @Test
+    public void fastBlocksMakeItHarder() {
+        // One block at half the target time halves the weighted average, later ones follow
+        double first = ratio(run(2, BLOCK_TIME / 2).getNextDifficulty());
+        assertEquals(0.5, first, 0.001);
+        assertTrue(ratio(run(30, BLOCK_TIME / 2).getNextDifficulty()) < first);
+    }
+
+    @Test
+    public void slowBlocksMakeItEasier() {
+        assertEquals(2.0, ratio(run(2, 2 * BLOCK_TIME).getNextDifficulty()), 0.001);
+    }
+
+    @Test
+    public void oneBadTimestampIsClamped() {
+        DifficultyAdjustment adjustment = new DifficultyAdjustment(BLOCK_TIME, 10, INITIAL);
+        adjustment = adjustment.next(block(0, INITIAL));
+        adjustment = adjustment.next(block(1_000_000 * BLOCK_TIME, INITIAL));
+        assertEquals(6.0, ratio(adjustment.getNextDifficulty()), 0.001);
+    }
+
+    @Test
+    public void slidingSumsMatchARecomputedAverage() {
+        int window = 5;
+        Random random = new Random(3);
+        DifficultyAdjustment adjustment = new DifficultyAdjustment(BLOCK_TIME, window, INITIAL);
+        List<Long> solveTimes = new ArrayList<>();
+        List<BigInteger> targets = new ArrayList<>();
+
+        long time = 0;
+        adjustment = adjustment.next(block(time, INITIAL));
+        for (int i = 0; i < 40; i++) {
+            long solveTime = random.nextInt((int) (3 * BLOCK_TIME)) - BLOCK_TIME / 2;
+            time += solveTime;
+            int difficulty = adjustment.getNextDifficulty();
+            solveTimes.add(solveTime);
+            targets.add(PoWTarget.fromCompact(difficulty));
+            adjustment = adjustment.next(block(time, difficulty));
+
+            int from = Math.max(0, solveTimes.size() - window);
+            assertEquals("block " + i, lwma(solveTimes.subList(from, solveTimes.size()),
+                    targets.subList(from, targets.size())), adjustment.getNextDifficulty());
+        }
+    }
+
+    // The formula in DifficultyAdjustment, from scratch
+    private static int lwma(List<Long> solveTimes, List<BigInteger> targets) {
+        int n = solveTimes.size();
+        long weighted = 0;
+        BigInteger sumTargets = BigInteger.ZERO;
+        for (int i = 0; i < n; i++) {
+            weighted += (i + 1) * solveTimes.get(i);
+            sumTargets = sumTargets.add(targets.get(i));
+        }
+        long weights = (long) n * (n + 1) / 2;
+        weighted = Math.max(weighted, weights * BLOCK_TIME / 10);
+        BigInteger target = sumTargets.multiply(BigInteger.valueOf(weighted))
+                .divide(BigInteger.valueOf(n * weights * BLOCK_TIME));
+        return PoWTarget.toCompact(target.max(BigInteger.ONE).min(PoWTarget.MAX));
+    }
+
+    @Test
+    public void forksShareTheirParentsState() {
+        DifficultyAdjustment parent = run(5, BLOCK_TIME);
+        DifficultyAdjustment slow = parent.next(block(7 * BLOCK_TIME, parent.getNextDifficulty()));
+        DifficultyAdjustment fast = parent.next(block(4 * BLOCK_TIME + BLOCK_TIME / 4, parent.getNextDifficulty()));
+        assertEquals(run(5, BLOCK_TIME).getNextDifficulty(), parent.getNextDifficulty());
+        assertEquals(2 * BLOCK_TIME, parent.getMedianTimePast());
+        assertEquals(3 * BLOCK_TIME, fast.getMedianTimePast());
+        assertTrue(ratio(slow.getNextDifficulty()) > 1);
+        assertTrue(ratio(fast.getNextDifficulty()) < 1);
+
+        // Extending each branch in turn gives what a lone chain would, once the window slides
+        long time = 7 * BLOCK_TIME;
+        long fastTime = 4 * BLOCK_TIME + BLOCK_TIME / 4;
+        DifficultyAdjustment lone = run(5, BLOCK_TIME).next(block(7 * BLOCK_TIME, parent.getNextDifficulty()));
+        for (int i = 0; i < 30; i++) {
+            time += BLOCK_TIME;
+            fastTime += BLOCK_TIME / 2;
+            slow = slow.next(block(time, slow.getNextDifficulty()));
+            fast = fast.next(block(fastTime, fast.getNextDifficulty()));
+            lone = lone.next(block(time, lone.getNextDifficulty()));
+            assertEquals(lone.getNextDifficulty(), slow.getNextDifficulty());
+            assertEquals(lone.getMedianTimePast(), slow.getMedianTimePast());
+        }
+        assertTrue(ratio(fast.getNextDifficulty()) < ratio(slow.getNextDifficulty()));
+    }
+
+    @Test
+    public void medianTimePast() {
+        DifficultyAdjustment adjustment = new DifficultyAdjustment(BLOCK_TIME, 10, INITIAL);
+        assertEquals(Long.MIN_VALUE, adjustment.getMedianTimePast());
+
+        // Out of order: the median ignores a single outlier in either direction
+        long[] timestamps = {100, 300, 200, 10_000, 400, 0};
+        for (long timestamp : timestamps) {
+            adjustment = adjustment.next(block(timestamp, INITIAL));
+        }
+        assertEquals(300, adjustment.getMedianTimePast());
+
+        // Only the last MEDIAN_TIME_SPAN blocks count
+        for (int i = 0; i < Config.MEDIAN_TIME_SPAN; i++) {
+            adjustment = adjustment.next(block(50_000 + i, INITIAL));
+        }
+        assertEquals(50_000 + Config.MEDIAN_TIME_SPAN / 2, adjustment.getMedianTimePast());
+    }
+}
@@ -0,0 +1,89 @@
+package pt.tecnico.ulisboa.consensus.pow_plus_posw.pow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+import pt.tecnico.ulisboa.blockchain.blocks.HybridBlock;
+import pt.tecnico.ulisboa.blockchain.blocks.PoWTarget;
+
+public class ParallelMinerTest {
+    private static HybridBlock block(int difficulty) {
+        return new HybridBlock("prev", 1, new ArrayList<>(), difficulty);
+    }
+
+    private static void assertSolves(HybridBlock block, ParallelMiner.Result result) {
+        block.setNonce(result.getNonce());
+        assertEquals(result.getHash(), block.computeBlockHash(true));
+        assertTrue(block.meetsDifficulty());
+        assertTrue(result.getAttempts() > 0);
+    }
+
+    @Test
+    public void foundNonceMeetsTheTarget() {
+        try (ParallelMiner miner = new ParallelMiner(1)) {
+            HybridBlock block = block(PoWTarget.fromLeadingZeros(3));
+            assertSolves(block, miner.search(block));
+        }
+    }
+
+    @Test
+    public void everyWorkerCountFindsAValidNonce() {
+        for (int threads : new int[] { 2, 3, 4 }) {
+            try (ParallelMiner miner = new ParallelMiner(threads)) {
+                for (int i = 0; i < 5; i++) {
+                    HybridBlock block = block(PoWTarget.fromLeadingZeros(3));
+                    block.setNonce(i * 1_000_003L);
+                    ParallelMiner.Result result = miner.search(block);
+                    assertTrue(result.getNonce() >= block.getNonce());
+                    assertSolves(block, result);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void searchStartsAtTheBlockNonceAndLeavesTheBlockAlone() {
+        // With one worker the search is sequential, so it returns the first solution from the start
+        try (ParallelMiner miner = new ParallelMiner(1)) {
+            HybridBlock block = block(PoWTarget.fromLeadingZeros(2));
+            long first = miner.search(block).getNonce();
+            assertEquals(0, block.getNonce());
+            block.setNonce(first + 1);
+            assertTrue(miner.search(block).getNonce() > first);
+            assertEquals(first + 1, block.getNonce());
+        }
+    }
+
+    @Test
+    public void cancelledSearchStops() {
+        try (ParallelMiner miner = new ParallelMiner(2)) {
+            // 40 leading zero hex digits, which no search here can meet
+            HybridBlock block = block(PoWTarget.fromLeadingZeros(40));
+            long deadline = System.currentTimeMillis() + 100;
+            long start = System.nanoTime();
+            try {
+                miner.search(block, () -> System.currentTimeMillis() > deadline);
+                fail("Search was not cancelled");
+            } catch (CancellationException e) {
+                // expected
+            }
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            assertTrue("took " + elapsedMs + " ms", elapsedMs < 2000);
+
+            // The miner is still usable afterwards
+            HybridBlock easy = block(PoWTarget.fromLeadingZeros(2));
+            assertSolves(easy, miner.search(easy));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsAThread() {
+        new ParallelMiner(0);
+    }
+}
@@ -0,0 +1,92 @@
+package pt.tecnico.ulisboa.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import pt.tecnico.ulisboa.blockchain.blocks.MerkleTree;
+import pt.tecnico.ulisboa.utils.CryptoUtils;
+
+public class CanonicalEncodingTest {
+    private static final String RECEIVER = "0x" + "ab".repeat(20);
+
+    @Test
+    public void transferLayout() {
+        TransferDepCoinReq tx = new TransferDepCoinReq(7, 42L, RECEIVER, BigInteger.valueOf(1000));
+        byte[] type = "TRANSFER_DEP_COIN".getBytes(StandardCharsets.UTF_8);
+        byte[] receiver = RECEIVER.getBytes(StandardCharsets.UTF_8);
+        byte[] amount = BigInteger.valueOf(1000).toByteArray();
+        ByteBuffer expected = ByteBuffer.allocate(4 + type.length + 4 + 1 + 8 + 4 + receiver.length + 4 + amount.length)
+                .putInt(type.length).put(type)
+                .putInt(7)
+                .put((byte) 1).putLong(42)
+                .putInt(receiver.length).put(receiver)
+                .putInt(amount.length).put(amount);
+        assertArrayEquals(expected.array(), tx.getEncoding());
+    }
+
+    @Test
+    public void nullAndEmptyDiffer() {
+        assertFalse(Arrays.equals(new CanonicalEncoder().writeString(null).toByteArray(),
+                new CanonicalEncoder().writeString("").toByteArray()));
+        assertFalse(Arrays.equals(new CanonicalEncoder().writeLong(null).toByteArray(),
+                new CanonicalEncoder().writeLong(0L).toByteArray()));
+        assertFalse(Arrays.equals(new CanonicalEncoder().writeStrings(null).toByteArray(),
+                new CanonicalEncoder().writeStrings(new String[0]).toByteArray()));
+    }
+
+    @Test
+    public void fieldBoundariesAreUnambiguous() {
+        // The same characters split differently must not encode the same way
+        assertFalse(Arrays.equals(new CanonicalEncoder().writeStrings(new String[] {"ab", "c"}).toByteArray(),
+                new CanonicalEncoder().writeStrings(new String[] {"a", "bc"}).toByteArray()));
+        assertFalse(Arrays.equals(new ContractCallReq(1, 1L, "Token", "transfer", "ab", "c").getEncoding(),
+                new ContractCallReq(1, 1L, "Token", "transfer", "a", "bc").getEncoding()));
+        assertFalse(Arrays.equals(new ContractCallReq(1, 1L, "Tok", "entransfer").getEncoding(),
+                new ContractCallReq(1, 1L, "Token", "transfer").getEncoding()));
+    }
+
+    @Test
+    public void requestTypeIsPartOfTheEncoding() {
+        assertFalse(Arrays.equals(new BalanceOfDepCoinReq(1, 1L, RECEIVER).getEncoding(),
+                new TransferDepCoinReq(1, 1L, RECEIVER, null).getEncoding()));
+    }
+
+    @Test
+    public void encodingIsCachedUntilTheContentChanges() {
+        TransferDepCoinReq tx = new TransferDepCoinReq(1, 1L, RECEIVER, BigInteger.TEN);
+        byte[] before = tx.getEncoding();
+        assertSame(before, tx.getEncoding());
+
+        tx.setReceiver("0x" + "cd".repeat(20));
+        assertFalse(Arrays.equals(before, tx.getEncoding()));
+        assertFalse(Arrays.equals(MerkleTree.hashLeaf(before), tx.getLeafHash()));
+    }
+
+    @Test
+    public void signatureCoversTheEncodingOnly() {
+        KeyPair keys = CryptoUtils.generateKeyPair(2048);
+        TransferDepCoinReq tx = new TransferDepCoinReq(1, 5L, RECEIVER, BigInteger.TWO);
+        byte[] unsigned = tx.getEncoding().clone();
+        tx.sign(keys.getPrivate());
+        assertArrayEquals(unsigned, tx.getEncoding());
+        assertTrue(tx.verifySignature(keys.getPublic()));
+
+        // A JSON round trip rebuilds the same encoding, so the signature still holds
+        ClientReq copy = ClientReqFactory.fromJson(tx.toJson());
+        assertArrayEquals(unsigned, copy.getEncoding());
+        assertTrue(copy.verifySignature(keys.getPublic()));
+
+        tx.setReceiver("0x" + "ef".repeat(20));
+        assertFalse(tx.verifySignature(keys.getPublic()));
+    }
+}
@@ -0,0 +1,62 @@
+package pt.tecnico.ulisboa.utils.types;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PersistentArrayTest {
+    @Test
+    public void everyVersionKeepsItsValues() {
+        PersistentArray<Integer> empty = new PersistentArray<>(3);
+        PersistentArray<Integer> one = empty.set(0, 1);
+        PersistentArray<Integer> two = one.set(1, 2);
+        PersistentArray<Integer> other = one.set(1, 20);
+
+        assertEquals(Arrays.asList(1, 20, null), other.prefix(3));
+        assertEquals(Arrays.asList(1, 2, null), two.prefix(3));
+        assertEquals(Arrays.asList(1, null, null), one.prefix(3));
+        assertNull(empty.get(0));
+        assertEquals(Integer.valueOf(20), other.get(1));
+        assertEquals(3, two.size());
+    }
+
+    @Test
+    public void randomVersionTreeMatchesCopies() {
+        int size = 8;
+        Random random = new Random(5);
+        List<PersistentArray<Integer>> versions = new ArrayList<>();
+        List<Integer[]> copies = new ArrayList<>();
+        versions.add(new PersistentArray<>(size));
+        copies.add(new Integer[size]);
+
+        for (int step = 0; step < 2000; step++) {
+            // Mostly extend recent versions, sometimes far older ones
+            int from = random.nextInt(4) == 0
+                    ? random.nextInt(versions.size())
+                    : Math.max(0, versions.size() - 1 - random.nextInt(3));
+            int slot = random.nextInt(size);
+            int value = random.nextInt(1000);
+            versions.add(versions.get(from).set(slot, value));
+            Integer[] copy = copies.get(from).clone();
+            copy[slot] = value;
+            copies.add(copy);
+
+            int check = random.nextInt(versions.size());
+            assertEquals("version " + check, Arrays.asList(copies.get(check)), versions.get(check).prefix(size));
+        }
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals("version " + i, Arrays.asList(copies.get(i)), versions.get(i).prefix(size));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeMustBePositive() {
+        new PersistentArray<Integer>(0);
+    }
+}